@@ -34,6 +34,14 @@ public interface Bank {
      */
     public long getTotalAmount();
 
+    /**
+     * Copies amounts of all accounts into the specified array, they are all taken at the same moment of time.
+     *
+     * @param out array for amounts, the amount of account i is stored into <code>out[i]</code>.
+     * @throws IllegalArgumentException when out is shorter than the {@link #getNumberOfAccounts() number of accounts}.
+     */
+    public void snapshot(long[] out);
+
     /**
      * Deposits specified amount to account.
      *
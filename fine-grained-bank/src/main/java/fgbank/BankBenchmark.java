@@ -0,0 +1,73 @@
+package fgbank;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link BankImpl} operations on random accounts.
+ * The same benchmark is in lock-free-bank for the lock-free implementation, so the results are comparable.
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+public class BankBenchmark {
+    private static final long MEAN = 1_000_000_000;
+    private static final int AMT = 1_000; // AMT << MEAN, so that probability of over/under flow is negligible
+
+    @State(Scope.Benchmark)
+    public static class BankState {
+        @Param({"16", "1000"})
+        public int accounts = 16;
+
+        Bank bank;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            bank = new BankImpl(accounts);
+            for (int i = 0; i < accounts; i++) {
+                bank.deposit(i, MEAN);
+            }
+        }
+    }
+
+    @Benchmark
+    public long deposit(BankState state) {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        return state.bank.deposit(r.nextInt(state.accounts), 1 + r.nextInt(AMT));
+    }
+
+    @Benchmark
+    public void transfer(BankState state) {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        int fromIndex = r.nextInt(state.accounts);
+        int toIndex = r.nextInt(state.accounts - 1);
+        if (toIndex >= fromIndex) {
+            toIndex++;
+        }
+        state.bank.transfer(fromIndex, toIndex, 1 + r.nextInt(AMT));
+    }
+
+    @Benchmark
+    public long getTotalAmount(BankState state) {
+        return state.bank.getTotalAmount();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 4}) {
+            Options opt = new OptionsBuilder()
+                    .include(BankBenchmark.class.getSimpleName())
+                    .forks(1)
+                    .threads(threads)
+                    .build();
+            new Runner(opt).run();
+        }
+    }
+}
@@ -6,8 +6,15 @@ import java.util.concurrent.locks.ReentrantLock;
 /**
  * Bank implementation.
  *
+ * <p>Updates lock accounts in the ascending order of indices, and snapshots of all accounts are read without locks,
+ * see {@link #snapshot(long[])}.
  */
 public class BankImpl implements Bank {
+    /**
+     * The number of double collects in {@link #snapshot(long[])} before it falls back to locking all accounts.
+     */
+    private static final int COLLECT_ATTEMPTS = 4;
+
     /**
      * An array of accounts by index.
      */
@@ -51,15 +58,42 @@ public class BankImpl implements Bank {
      */
     @Override
     public long getTotalAmount() {
+        long[] amounts = new long[accounts.length];
+        snapshot(amounts);
         long sum = 0;
+        for (long amount : amounts) {
+            sum += amount;
+        }
+        return sum;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void snapshot(long[] out) {
+        if (out.length < accounts.length) {
+            throw new IllegalArgumentException("Array is shorter than the number of accounts: " + out.length);
+        }
+        /*
+         * Double collect: the amount of every account is taken if its version is even and the same
+         * in both passes, so no update was in progress on the account from the first read to the second one,
+         * and all amounts were in the accounts at the moment between the passes.
+         */
+        long[] versions = new long[accounts.length];
+        for (int attempt = 0; attempt < COLLECT_ATTEMPTS; attempt++) {
+            if (collect(out, versions) && validate(versions)) {
+                return;
+            }
+        }
+        // accounts are updated too often for a double collect to succeed, so fall back to locking all of them
         int maxLock = -1;
         try {
             for (int i = 0; i < accounts.length; ++i) {
                 accounts[i].lock();
                 maxLock = i;
-                sum += accounts[i].amount;
+                out[i] = accounts[i].amount;
             }
-            return sum;
         } finally {
             for (int i = maxLock; i >= 0; --i) {
                 accounts[i].unlock();
@@ -67,6 +101,33 @@ public class BankImpl implements Bank {
         }
     }
 
+    /**
+     * Reads amounts and versions of all accounts. Returns false if an update was in progress on some account.
+     */
+    private boolean collect(long[] out, long[] versions) {
+        for (int i = 0; i < accounts.length; i++) {
+            long version = accounts[i].version;
+            if ((version & 1) != 0) {
+                return false;
+            }
+            out[i] = accounts[i].amount;
+            versions[i] = version;
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if no account was updated since {@link #collect(long[], long[])}.
+     */
+    private boolean validate(long[] versions) {
+        for (int i = 0; i < accounts.length; i++) {
+            if (accounts[i].version != versions[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -81,7 +142,9 @@ public class BankImpl implements Bank {
             if (amount > MAX_AMOUNT || account.amount + amount > MAX_AMOUNT) {
                 throw new IllegalStateException("Overflow");
             }
+            account.beginUpdate();
             account.amount += amount;
+            account.endUpdate();
             return account.amount;
         } finally {
             accounts[index].unlock();
@@ -102,7 +165,9 @@ public class BankImpl implements Bank {
             if (account.amount - amount < 0) {
                 throw new IllegalStateException("Underflow");
             }
+            account.beginUpdate();
             account.amount -= amount;
+            account.endUpdate();
             return account.amount;
         } finally {
             accounts[index].unlock();
@@ -134,8 +199,13 @@ public class BankImpl implements Bank {
             } else if (amount > MAX_AMOUNT || to.amount + amount > MAX_AMOUNT) {
                 throw new IllegalStateException("Overflow");
             }
+            // both versions are odd until both amounts are changed, so a snapshot sees the transfer as a whole
+            from.beginUpdate();
+            to.beginUpdate();
             from.amount -= amount;
             to.amount += amount;
+            from.endUpdate();
+            to.endUpdate();
         } finally {
             for (int i = maxLockInd; i >= 0; --i) {
                 accounts[indArray[i]].unlock();
@@ -150,7 +220,13 @@ public class BankImpl implements Bank {
         /**
          * Amount of funds in this account.
          */
-        long amount;
+        volatile long amount;
+
+        /**
+         * The number of updates of this account, which is odd while an update is in progress.
+         * It is incremented only under the lock.
+         */
+        volatile long version;
 
         /**
          * Lock for thread-safety
@@ -169,5 +245,13 @@ public class BankImpl implements Bank {
         final void unlock() {
             lock.unlock();
         }
+
+        final void beginUpdate() {
+            version++;
+        }
+
+        final void endUpdate() {
+            version++;
+        }
     }
 }
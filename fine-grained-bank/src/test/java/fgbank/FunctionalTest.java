@@ -64,4 +64,19 @@ public class FunctionalTest extends TestCase {
         assertEquals(transferAmount, bank.getAmount(2));
         assertEquals(depositAmount, bank.getTotalAmount());
     }
+
+    public void testSnapshot() {
+        bank.deposit(1, 1000);
+        bank.deposit(3, 2000);
+        bank.transfer(3, 4, 500);
+        long[] amounts = new long[N];
+        bank.snapshot(amounts);
+        for (int i = 0; i < N; i++)
+            assertEquals(bank.getAmount(i), amounts[i]);
+        try {
+            bank.snapshot(new long[N - 1]);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
 }
\ No newline at end of file
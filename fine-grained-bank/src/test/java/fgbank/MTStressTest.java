@@ -10,7 +10,7 @@ import java.util.concurrent.atomic.AtomicLong;
 /**
  * Multi-threaded stress test for bank implementation -- many threads and operations of various accounts.
  *
- * <p>This test test correctness of concurrent deposit, withdraw, transfer, and getTotalAmount operations.
+ * <p>This test test correctness of concurrent deposit, withdraw, transfer, getTotalAmount, and snapshot operations.
  * It does not check getAmount operations concurrently with the above.
  */
 public class MTStressTest extends TestCase {
@@ -68,6 +68,7 @@ public class MTStressTest extends TestCase {
     private class TestThread extends Thread {
         private final int threadNo;
         private ThreadLocalRandom rnd;
+        private final long[] amounts = new long[N];
 
         public TestThread(int threadNo) {
             super("TestThread-" + threadNo);
@@ -120,6 +121,15 @@ public class MTStressTest extends TestCase {
                 assertEquals(0, totalAmount % MOD); // the result must be divisible to MOD
                 return;
             }
+            if (op == 2) {
+                // every 100th operation on average is snapshot, which retries while accounts are updated concurrently
+                bank.snapshot(amounts);
+                long totalAmount = 0;
+                for (long amount : amounts)
+                    totalAmount += amount;
+                assertEquals(0, totalAmount % MOD); // the snapshot must see every transfer as a whole
+                return;
+            }
             int i = rnd.nextInt(N);
             long amount;
             switch (op & 3) {
@@ -0,0 +1,163 @@
+package lock_free_hashtable;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Core of a lock-free hash table with the algorithm of {@link IntIntHashMap}, shared by {@link IntHashSet}
+ * and {@link IntIntMultiMap}. It keeps the chain of cores and moves this core to the next one by chunks of slots,
+ * which are claimed by rehash helpers. A subclass keeps the slots and moves a slot by marking it, adding its item
+ * to the next core with {@link #moveToNext(long)} and replacing it with the moved state.
+ *
+ * @param <C> type of the core.
+ */
+abstract class AbstractCore<C extends AbstractCore<C>> {
+    // Results of addInternal and removeInternal
+    static final int UNCHANGED = 0; // the item was already present or absent
+    static final int CHANGED = 1; // the item was added or removed
+    static final int NEEDS_REHASH = -1; // rehash is needed
+    static final int LOOK_FOR_NEXT = -2; // needed lookup in other table
+
+    final AtomicReference<C> next = new AtomicReference<>();
+    final StripedCounter size; // number of present items in the whole table, shared by all cores
+    final StripedCounter tombstones = new StripedCounter(); // number of removed items in this core
+    private final int length; // number of slots
+    private final int stride; // number of slots in a chunk claimed by rehash helper
+    private final int chunks; // number of chunks the slots are split into for migration
+    private final AtomicInteger transferIndex = new AtomicInteger(); // next chunk to be claimed by a helper
+    private final AtomicIntegerArray movedChunks; // 1 for every chunk that was fully moved to next core
+    private final AtomicInteger movedChunksCount = new AtomicInteger();
+
+    /**
+     * Creates new core with a given number of slots.
+     */
+    AbstractCore(int length, int stride, StripedCounter size) {
+        this.length = length;
+        this.stride = stride;
+        this.size = size;
+        chunks = (length + stride - 1) / stride;
+        movedChunks = new AtomicIntegerArray(chunks);
+    }
+
+    /**
+     * Returns the number of items that fit into this core.
+     */
+    abstract int capacity();
+
+    /**
+     * Returns capacity that is enough to keep a given number of items without rehash.
+     */
+    abstract int capacityFor(long expectedSize);
+
+    /**
+     * Creates new empty core with a given capacity, which shares the size with this one.
+     */
+    abstract C newCore(int capacity);
+
+    /**
+     * Adds the item that is moved from the previous core, so it is added only if it was never added to this core.
+     */
+    abstract int addMoved(long item);
+
+    /**
+     * Moves the slot to the next core, it is called by rehash helpers for every slot of this core.
+     */
+    abstract void moveSlot(int index);
+
+    /**
+     * Helps to move this core to the next one and returns only when all chunks are moved.
+     *
+     * @see IntIntHashMap
+     */
+    final void helpRehash() {
+        while (movedChunksCount.get() < chunks) {
+            if (transferIndex.get() >= chunks) {
+                for (int chunk = 0; chunk < chunks; chunk++) {
+                    if (movedChunks.get(chunk) == 0) {
+                        moveChunk(chunk);
+                    }
+                }
+                return;
+            }
+            int chunk = transferIndex.getAndIncrement();
+            if (chunk < chunks) {
+                moveChunk(chunk);
+            }
+        }
+    }
+
+    private void moveChunk(int chunk) {
+        int end = Math.min(length, (chunk + 1) * stride);
+        for (int index = chunk * stride; index < end; index++) {
+            moveSlot(index);
+        }
+        if (movedChunks.compareAndSet(chunk, 0, 1)) {
+            movedChunksCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Adds the item of a marked slot to the next core, following the chain of cores when it is rehashed too.
+     */
+    final void moveToNext(long item) {
+        C curRealNext = next.get();
+        boolean moved = false;
+        while (!moved) {
+            switch (curRealNext.addMoved(item)) {
+                case NEEDS_REHASH: {
+                    curRealNext = curRealNext.rehash();
+                    break;
+                }
+                case LOOK_FOR_NEXT: {
+                    curRealNext = curRealNext.next.get();
+                    break;
+                }
+                default: {
+                    moved = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if the removed items dominate in the core, and either they take a quarter of the core,
+     * or present items take less than 1/16 of the core.
+     *
+     * @see IntIntHashMap
+     */
+    final boolean needsCompaction() {
+        int capacity = capacity();
+        long curTombstones = tombstones.sum();
+        long curSize = size.sum();
+        return curTombstones >= curSize && (curTombstones >= capacity / 4 || 16 * curSize <= capacity);
+    }
+
+    /**
+     * Returns capacity of the next core. The capacity is doubled unless the most of used slots are removed items.
+     *
+     * @see IntIntHashMap
+     */
+    private int nextCapacity() {
+        int capacity = capacity();
+        long curSize = Math.max(size.sum(), 0);
+        int target = capacityFor(2 * curSize);
+        if (target <= capacity && tombstones.sum() >= curSize) {
+            return target;
+        }
+        return 2 * capacity;
+    }
+
+    final C rehash() {
+        C res = next.get();
+        if (res == null) {
+            res = newCore(nextCapacity());
+            if (!next.compareAndSet(null, res)) {
+                res = next.get();
+            }
+        }
+        helpRehash();
+        return res;
+    }
+}
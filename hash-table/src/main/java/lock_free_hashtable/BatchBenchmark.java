@@ -0,0 +1,109 @@
+package lock_free_hashtable;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of batch {@link IntIntHashMap#getAll(int[], int[])} and {@link IntIntHashMap#putEach(int[], int[], int[])}
+ * against the loops of single gets and puts with random keys, measured in batches.
+ * The large key space does not fit in cache, so every key is a cache miss.
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+public class BatchBenchmark {
+    private static final int BATCHES = 64; // number of pregenerated batches per thread
+
+    @State(Scope.Benchmark)
+    public static class MapState {
+        @Param({"100000", "10000000"})
+        public int keySpace = 100000;
+
+        IntIntHashMap map;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            map = new IntIntHashMap(keySpace);
+            for (int key = 1; key <= keySpace; key++) {
+                map.put(key, key);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        @Param({"64", "512"})
+        public int batchSize = 64;
+
+        int[][] keys;
+        int[] out;
+        int index;
+
+        @Setup(Level.Trial)
+        public void setUp(MapState mapState) {
+            Random r = ThreadLocalRandom.current();
+            keys = new int[BATCHES][batchSize];
+            for (int[] batch : keys) {
+                for (int i = 0; i < batchSize; i++) {
+                    batch[i] = 1 + r.nextInt(mapState.keySpace);
+                }
+            }
+            out = new int[batchSize];
+        }
+
+        int[] nextBatch() {
+            return keys[index++ & (BATCHES - 1)];
+        }
+    }
+
+    @Benchmark
+    public int[] getLoop(MapState mapState, ThreadState threadState) {
+        int[] keys = threadState.nextBatch();
+        int[] out = threadState.out;
+        for (int i = 0; i < keys.length; i++) {
+            out[i] = mapState.map.get(keys[i]);
+        }
+        return out;
+    }
+
+    @Benchmark
+    public int[] getAll(MapState mapState, ThreadState threadState) {
+        int[] keys = threadState.nextBatch();
+        mapState.map.getAll(keys, threadState.out);
+        return threadState.out;
+    }
+
+    @Benchmark
+    public int[] putLoop(MapState mapState, ThreadState threadState) {
+        int[] keys = threadState.nextBatch();
+        int[] out = threadState.out;
+        for (int i = 0; i < keys.length; i++) {
+            out[i] = mapState.map.put(keys[i], keys[i]);
+        }
+        return out;
+    }
+
+    @Benchmark
+    public int[] putEach(MapState mapState, ThreadState threadState) {
+        int[] keys = threadState.nextBatch();
+        mapState.map.putEach(keys, keys, threadState.out);
+        return threadState.out;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BatchBenchmark.class.getSimpleName())
+                .forks(1)
+                .build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,260 @@
+package lock_free_hashtable;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Int-to-Int hash map with a fixed capacity that never rehashes, to be used as a cache.
+ * A key is kept in the window of 8 adjacent pairs, which take 64 bytes, though the window usually spans
+ * two cache lines, since the array is not aligned to them. When the window is full,
+ * the pair for a new key evicts one of them that is chosen by the CLOCK algorithm:
+ * every hit sets the reference bit of the value, and the clock hand of the window
+ * clears the bits until it finds a pair without it.
+ *
+ * <p>Every (key, value) pair is packed into a single long of {@link AtomicLongArray}, so it is read,
+ * updated, evicted and removed with a single CAS, and all operations are lock-free.
+ * A put of a new key inserts the pair with a CAS and then scans the window again, since concurrent puts
+ * of the same key may insert it into different slots. The pair with the lowest index wins: a put that finds
+ * the key before its own slot removes its pair and updates the winner, and the winner removes the pairs after it.
+ * So a duplicate pair may be seen for a short time, and remove clears all pairs of the key.
+ * The clock hands are advanced by CAS and are best effort: concurrent inserts may sweep the same pair.
+ */
+public class BoundedIntIntHashMap {
+    private static final int MAGIC = 0x9E3779B9; // golden ratio
+    private static final int WINDOW_SIZE = 8; // number of pairs, which a key can take
+    private static final int MAX_CAPACITY = 1 << 30; // max capacity of the map
+
+    private static final long NULL_ENTRY = 0L; // missing pair (initial value)
+    private static final long REF_BIT = 1L << 31; // set for the value of the pair that was used since the last sweep
+
+    private final AtomicLongArray map; // packed pairs here
+    private final int shift;
+    private final AtomicIntegerArray hands; // clock hands of windows
+    private final StripedCounter hits = new StripedCounter();
+    private final StripedCounter misses = new StripedCounter();
+    private final StripedCounter evictions = new StripedCounter();
+
+    /**
+     * Creates new empty map that keeps at most a given number of pairs.
+     * The capacity is rounded up to the power of two, and it is at least 8.
+     *
+     * @param capacity max number of pairs in the map.
+     * @throws IllegalArgumentException if capacity is not positive or greater than 2^30.
+     */
+    public BoundedIntIntHashMap(int capacity) {
+        if (capacity <= 0 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        capacity = Math.max(WINDOW_SIZE, Integer.highestOneBit(capacity - 1) << 1);
+        map = new AtomicLongArray(capacity);
+        shift = 32 - Integer.numberOfTrailingZeros(capacity);
+        hands = new AtomicIntegerArray(capacity / WINDOW_SIZE);
+    }
+
+    /**
+     * Returns value for the corresponding key or zero if this key is not present.
+     * A hit marks the pair as recently used.
+     *
+     * @param key a positive key.
+     * @return value for the corresponding or zero if this key is not present.
+     * @throws IllegalArgumentException if key is not positive.
+     */
+    public int get(int key) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Key must be positive: " + key);
+        }
+        int start = window(key) * WINDOW_SIZE;
+        for (int index = start; index < start + WINDOW_SIZE; index++) {
+            long entry = map.get(index);
+            if (keyOf(entry) == key) {
+                hits.add(1);
+                if ((entry & REF_BIT) == 0) {
+                    map.compareAndSet(index, entry, entry | REF_BIT); // losing the reference bit is harmless
+                }
+                return valueOf(entry);
+            }
+        }
+        misses.add(1);
+        return 0;
+    }
+
+    /**
+     * Changes value for the corresponding key and returns old value or zero if key was not present.
+     * If the window of the key is full, one of the pairs in it is evicted.
+     *
+     * @param key   a positive key.
+     * @param value a positive value.
+     * @return old value or zero if this key was not present.
+     * @throws IllegalArgumentException if key or value are not positive.
+     */
+    public int put(int key, int value) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Key must be positive: " + key);
+        }
+        if (value <= 0) {
+            throw new IllegalArgumentException("Invalid value: " + value);
+        }
+        long newEntry = ((long) key << 32) | value;
+        while (true) {
+            int oldValue = replace(key, newEntry);
+            if (oldValue >= 0) {
+                return oldValue;
+            }
+            int index = insert(window(key), newEntry);
+            // the key could be inserted concurrently into another slot, the pair with the lowest index wins
+            int first = indexOf(key);
+            if (first == index) {
+                return removeFrom(key, index + 1, (index & -WINDOW_SIZE) + WINDOW_SIZE);
+            }
+            if (first < 0 || first > index) {
+                return 0; // our pair is already evicted or removed
+            }
+            // our pair loses, it is removed here and the value is put into the winner,
+            // unless the winner has removed it already and returned our value as the old one
+            if (removeFrom(key, index, index + 1) == 0) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Removes value for the corresponding key and returns old value or zero if key was not present.
+     *
+     * @param key a positive key.
+     * @return old value or zero if this key was not present.
+     * @throws IllegalArgumentException if key is not positive.
+     */
+    public int remove(int key) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Key must be positive: " + key);
+        }
+        int start = window(key) * WINDOW_SIZE;
+        return removeFrom(key, start, start + WINDOW_SIZE);
+    }
+
+    /**
+     * Returns the max number of pairs in the map.
+     */
+    public int capacity() {
+        return map.length();
+    }
+
+    /**
+     * Returns the number of gets that found the key.
+     */
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of gets that did not find the key.
+     */
+    public long missCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of pairs that were evicted by puts of new keys.
+     */
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Puts the pair into the slot of the present key and returns its old value, or -1 if the key is not present.
+     */
+    private int replace(int key, long newEntry) {
+        while (true) {
+            int index = indexOf(key);
+            if (index < 0) {
+                return -1;
+            }
+            long entry = map.get(index);
+            // the update is a use of the pair, so it sets the reference bit
+            if (keyOf(entry) == key && map.compareAndSet(index, entry, newEntry | REF_BIT)) {
+                return valueOf(entry);
+            }
+        }
+    }
+
+    /**
+     * Removes all pairs of the key in the range of slots [from, end),
+     * and returns the value of the first removed pair or zero if there is no such pair.
+     */
+    private int removeFrom(int key, int from, int end) {
+        int oldValue = 0;
+        for (int index = from; index < end; index++) {
+            long entry = map.get(index);
+            while (keyOf(entry) == key) {
+                if (map.compareAndSet(index, entry, NULL_ENTRY)) {
+                    if (oldValue == 0) {
+                        oldValue = valueOf(entry);
+                    }
+                    break;
+                }
+                entry = map.get(index);
+            }
+        }
+        return oldValue;
+    }
+
+    /**
+     * Inserts the pair for a new key into a free slot of the window, or evicts the pair under the clock hand,
+     * and returns the index of the slot.
+     */
+    private int insert(int window, long newEntry) {
+        int start = window * WINDOW_SIZE;
+        for (int index = start; index < start + WINDOW_SIZE; index++) {
+            if (map.get(index) == NULL_ENTRY && map.compareAndSet(index, NULL_ENTRY, newEntry)) {
+                return index;
+            }
+        }
+        // concurrent hits may set reference bits again, so after two sweeps the pair is evicted regardless
+        for (int steps = 0; ; steps++) {
+            int hand = hands.get(window);
+            int index = start + hand;
+            long entry = map.get(index);
+            if (entry == NULL_ENTRY) {
+                if (map.compareAndSet(index, NULL_ENTRY, newEntry)) {
+                    return index;
+                }
+            } else if ((entry & REF_BIT) != 0 && steps < 2 * WINDOW_SIZE) {
+                map.compareAndSet(index, entry, entry & ~REF_BIT);
+            } else if (map.compareAndSet(index, entry, newEntry)) {
+                hands.compareAndSet(window, hand, (hand + 1) & (WINDOW_SIZE - 1));
+                evictions.add(1);
+                return index;
+            }
+            // the hand is moved past the slot even if the CAS failed, so a pair that was just inserted is not evicted
+            hands.compareAndSet(window, hand, (hand + 1) & (WINDOW_SIZE - 1));
+        }
+    }
+
+    /**
+     * Returns index of the key in the map or -1 if the key is not present.
+     */
+    private int indexOf(int key) {
+        int start = window(key) * WINDOW_SIZE;
+        for (int index = start; index < start + WINDOW_SIZE; index++) {
+            if (keyOf(map.get(index)) == key) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the window to look for a given key.
+     */
+    private int window(int key) {
+        return ((key * MAGIC) >>> shift) / WINDOW_SIZE;
+    }
+
+    private static int keyOf(long entry) {
+        return (int) (entry >>> 32);
+    }
+
+    private static int valueOf(long entry) {
+        return (int) entry & ~(int) REF_BIT;
+    }
+}
@@ -0,0 +1,219 @@
+package lock_free_hashtable;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Throughput of {@link IntIntHashMap} in both layouts against {@code ConcurrentHashMap<Integer, Integer>}.
+ * The {@code mixed} benchmark sweeps read/write ratio, key space size and key skew on a prefilled map,
+ * the {@code growth} benchmark puts new keys into a map that keeps growing during the iteration.
+ * Thread count is swept by {@link #main(String[])}.
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+public class HashMapBenchmark {
+    private static final int OPS = 1 << 16; // number of pregenerated operations per thread
+    private static final double ZIPF_THETA = 0.99; // skew of Zipf distribution, as in YCSB
+
+    public enum Impl {
+        INT_INT_HASH_MAP,
+        INT_INT_HASH_MAP_BUCKETS,
+        CONCURRENT_HASH_MAP
+    }
+
+    public enum Distribution {
+        UNIFORM,
+        ZIPF
+    }
+
+    interface IntMap {
+        int get(int key);
+
+        int put(int key, int value);
+    }
+
+    static IntMap newMap(Impl impl) {
+        switch (impl) {
+            case INT_INT_HASH_MAP:
+                return newIntIntHashMap(IntIntHashMap.Layout.LINEAR_PROBING);
+            case INT_INT_HASH_MAP_BUCKETS:
+                return newIntIntHashMap(IntIntHashMap.Layout.CACHE_LINE_BUCKETS);
+            case CONCURRENT_HASH_MAP:
+                return newConcurrentHashMap();
+            default:
+                throw new AssertionError("Unknown implementation: " + impl);
+        }
+    }
+
+    private static IntMap newIntIntHashMap(IntIntHashMap.Layout layout) {
+        final IntIntHashMap map = new IntIntHashMap(0, layout);
+        return new IntMap() {
+            @Override
+            public int get(int key) {
+                return map.get(key);
+            }
+
+            @Override
+            public int put(int key, int value) {
+                return map.put(key, value);
+            }
+        };
+    }
+
+    private static IntMap newConcurrentHashMap() {
+        final ConcurrentHashMap<Integer, Integer> map = new ConcurrentHashMap<>();
+        return new IntMap() {
+            @Override
+            public int get(int key) {
+                Integer value = map.get(key);
+                return value == null ? 0 : value;
+            }
+
+            @Override
+            public int put(int key, int value) {
+                Integer oldValue = map.put(key, value);
+                return oldValue == null ? 0 : oldValue;
+            }
+        };
+    }
+
+    @State(Scope.Benchmark)
+    public static class MapState {
+        @Param({"INT_INT_HASH_MAP", "INT_INT_HASH_MAP_BUCKETS", "CONCURRENT_HASH_MAP"})
+        public Impl impl = Impl.INT_INT_HASH_MAP;
+
+        @Param({"50", "90", "99"})
+        public int readPercent = 90;
+
+        @Param({"1000", "100000", "10000000"})
+        public int keySpace = 1000;
+
+        @Param({"UNIFORM", "ZIPF"})
+        public Distribution distribution = Distribution.UNIFORM;
+
+        IntMap map;
+        double zetaN; // normalization constant of Zipf distribution for the key space
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            map = newMap(impl);
+            for (int key = 1; key <= keySpace; key++) {
+                map.put(key, key);
+            }
+            if (distribution == Distribution.ZIPF) {
+                zetaN = zeta(keySpace);
+            }
+        }
+
+        private static double zeta(int n) {
+            double sum = 0;
+            for (int i = 1; i <= n; i++) {
+                sum += 1 / Math.pow(i, ZIPF_THETA);
+            }
+            return sum;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        final int[] keys = new int[OPS];
+        final boolean[] reads = new boolean[OPS];
+        int index;
+
+        @Setup(Level.Trial)
+        public void setUp(MapState mapState) {
+            Random r = ThreadLocalRandom.current();
+            ZipfGenerator zipf = new ZipfGenerator(mapState.keySpace, mapState.zetaN);
+            for (int i = 0; i < OPS; i++) {
+                keys[i] = 1 + (mapState.distribution == Distribution.ZIPF ? zipf.next(r) : r.nextInt(mapState.keySpace));
+                reads[i] = r.nextInt(100) < mapState.readPercent;
+            }
+        }
+    }
+
+    /**
+     * Generates ranks from 0 to n-1 with Zipf distribution using the algorithm from
+     * "Quickly generating billion-record synthetic databases" by J. Gray et al.
+     */
+    static class ZipfGenerator {
+        final int n;
+        final double zetaN;
+        final double alpha;
+        final double eta;
+
+        ZipfGenerator(int n, double zetaN) {
+            this.n = n;
+            this.zetaN = zetaN;
+            alpha = 1 / (1 - ZIPF_THETA);
+            double zeta2 = 1 + 1 / Math.pow(2, ZIPF_THETA);
+            eta = (1 - Math.pow(2.0 / n, 1 - ZIPF_THETA)) / (1 - zeta2 / zetaN);
+        }
+
+        int next(Random r) {
+            double u = r.nextDouble();
+            double uz = u * zetaN;
+            if (uz < 1) {
+                return 0;
+            }
+            if (uz < 1 + Math.pow(0.5, ZIPF_THETA)) {
+                return 1;
+            }
+            return Math.min(n - 1, (int) (n * Math.pow(eta * u - eta + 1, alpha)));
+        }
+    }
+
+    @Benchmark
+    public int mixed(MapState mapState, ThreadState threadState) {
+        int i = threadState.index++ & (OPS - 1);
+        int key = threadState.keys[i];
+        if (threadState.reads[i]) {
+            return mapState.map.get(key);
+        } else {
+            return mapState.map.put(key, key);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class GrowthState {
+        @Param({"INT_INT_HASH_MAP", "INT_INT_HASH_MAP_BUCKETS", "CONCURRENT_HASH_MAP"})
+        public Impl impl = Impl.INT_INT_HASH_MAP;
+
+        IntMap map;
+        final AtomicInteger nextKey = new AtomicInteger();
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            map = newMap(impl);
+            nextKey.set(0);
+        }
+    }
+
+    @Benchmark
+    public int growth(GrowthState growthState) {
+        int key = growthState.nextKey.incrementAndGet();
+        return growthState.map.put(key, key);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 2, 4, 8}) {
+            Options opt = new OptionsBuilder()
+                    .include(HashMapBenchmark.class.getSimpleName())
+                    .forks(1)
+                    .threads(threads)
+                    .build();
+            new Runner(opt).run();
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package lock_free_hashtable;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static lock_free_hashtable.AbstractCore.CHANGED;
+import static lock_free_hashtable.AbstractCore.LOOK_FOR_NEXT;
+import static lock_free_hashtable.AbstractCore.NEEDS_REHASH;
+import static lock_free_hashtable.AbstractCore.UNCHANGED;
+
+/**
+ * Set of ints with open addressing and linear probes. It uses the same lock-free algorithm as {@link IntIntHashMap},
+ * but keeps only keys, so a cache line holds almost twice as many of them.
+ *
+ * <p>As in {@link IntIntHashMap}, the key is written to its slot once, and its state is kept apart from it.
+ * Slots are split into groups of 16 ints, 64 bytes, where the first int keeps two bits of state for each
+ * of the 15 keys in the group, so most keys share a cache line with their states. The removed key keeps its slot
+ * with the removed state, and the key that is moved to the next core is marked. An empty slot is moved
+ * by replacing it with a negative key, so an add that races with the move fails its CAS.
+ * Hence, keys are any positive ints, as in {@link IntIntHashMap}.
+ */
+public class IntHashSet {
+    private static final int MAGIC = 0x9E3779B9; // golden ratio
+    private static final int GROUP_SHIFT = 4;
+    private static final int GROUP_LENGTH = 1 << GROUP_SHIFT; // number of ints in a group: the states and the keys
+    private static final int GROUP_KEYS = GROUP_LENGTH - 1; // number of keys in a group
+    private static final int INITIAL_GROUPS = 2; // number of groups in the new set
+    private static final int MAX_PROBES = 8; // max number of probes to find an item
+    private static final int MAX_GROUPS = 1 << 26; // max number of groups that is chosen for expected size
+
+    private static final int NULL_KEY = 0; // missing key (initial value)
+    private static final int MOVED_KEY = Integer.MIN_VALUE; // empty slot moved during rehashing to new table
+    private static final int COMPACTION_CHECK_PERIOD = 64; // number of removes between checks for compaction
+
+    // States of a key in the states word of its group, two bits each
+    private static final int PRESENT = 0; // the key is present (initial value)
+    private static final int REMOVED = 1; // the key was removed
+    private static final int MARKED = 2; // the key is frozen while it is moved to next core
+    private static final int MOVED = 3; // the key was moved to next core
+    private static final int STATE_MASK = 3;
+
+    // Returns capacity that is enough to keep a given number of keys without rehash
+    private static int capacityFor(long expectedSize) {
+        int groups = INITIAL_GROUPS;
+        while (groups < MAX_GROUPS && (long) groups * GROUP_KEYS < 2 * expectedSize) {
+            groups <<= 1;
+        }
+        return groups * GROUP_KEYS;
+    }
+
+    private final StripedCounter size = new StripedCounter(); // number of present keys
+    private final AtomicReference<Core> core;
+
+    /**
+     * Creates new empty set.
+     */
+    public IntHashSet() {
+        core = new AtomicReference<>(new Core(INITIAL_GROUPS * GROUP_KEYS, size));
+    }
+
+    /**
+     * Creates new empty set that can keep a given number of keys without rehash.
+     *
+     * @param expectedSize expected number of keys in the set.
+     * @throws IllegalArgumentException if expected size is negative.
+     */
+    public IntHashSet(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Expected size must be non-negative: " + expectedSize);
+        }
+        core = new AtomicReference<>(new Core(capacityFor(expectedSize), size));
+    }
+
+    /**
+     * Returns true if the key is present in the set.
+     *
+     * @param key a positive key.
+     * @return true if the key is present.
+     * @throws IllegalArgumentException if key is not positive.
+     */
+    public boolean contains(int key) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Key must be positive: " + key);
+        }
+        return core.get().containsInternal(key);
+    }
+
+    /**
+     * Adds the key to the set and returns true if it was not present.
+     *
+     * @param key a positive key.
+     * @return true if the key was not present.
+     * @throws IllegalArgumentException if key is not positive.
+     */
+    public boolean add(int key) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Key must be positive: " + key);
+        }
+        while (true) {
+            Core curCore = core.get();
+            int res = curCore.addInternal(key, false);
+            if (res == NEEDS_REHASH) {
+                core.compareAndSet(curCore, curCore.rehash());
+            } else if (res == LOOK_FOR_NEXT) {
+                core.compareAndSet(curCore, curCore.next.get());
+            } else {
+                if (res == CHANGED) {
+                    size.add(1);
+                }
+                return res == CHANGED;
+            }
+        }
+    }
+
+    /**
+     * Removes the key from the set and returns true if it was present.
+     *
+     * @param key a positive key.
+     * @return true if the key was present.
+     * @throws IllegalArgumentException if key is not positive.
+     */
+    public boolean remove(int key) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Key must be positive: " + key);
+        }
+        while (true) {
+            Core curCore = core.get();
+            int res = curCore.removeInternal(key);
+            if (res == LOOK_FOR_NEXT) {
+                core.compareAndSet(curCore, curCore.next.get());
+            } else {
+                if (res == CHANGED) {
+                    size.add(-1);
+                    long cell = curCore.tombstones.add(1);
+                    if (cell % COMPACTION_CHECK_PERIOD == 0 && curCore.needsCompaction()) {
+                        core.compareAndSet(curCore, curCore.rehash());
+                    }
+                }
+                return res == CHANGED;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of keys in the set. The result is exact only when there are no concurrent updates.
+     */
+    public int size() {
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, size.sum()));
+    }
+
+
+    private static class Core extends AbstractCore<Core> {
+        final AtomicIntegerArray map; // groups of states and keys here
+        final int shift;
+
+        /**
+         * Creates new core with a given capacity for keys, which is a number of groups, power of 2, times 15.
+         */
+        Core(int capacity, StripedCounter size) {
+            super(capacity / GROUP_KEYS * GROUP_LENGTH, GROUP_LENGTH, size);
+            int groups = capacity / GROUP_KEYS;
+            assert groups > 1 && (groups & (groups - 1)) == 0 : "Number of groups must be power of 2: " + groups;
+            map = new AtomicIntegerArray(groups * GROUP_LENGTH);
+            shift = 32 - Integer.numberOfTrailingZeros(groups);
+        }
+
+        @Override
+        int capacity() {
+            return map.length() / GROUP_LENGTH * GROUP_KEYS;
+        }
+
+        @Override
+        int capacityFor(long expectedSize) {
+            return IntHashSet.capacityFor(expectedSize);
+        }
+
+        @Override
+        Core newCore(int capacity) {
+            return new Core(capacity, size);
+        }
+
+        @Override
+        int addMoved(long key) {
+            return addInternal((int) key, true);
+        }
+
+        boolean containsInternal(int key) {
+            int index = index(key);
+            for (int probes = 0; probes < MAX_PROBES; probes++) {
+                int curKey = map.get(index);
+                if (curKey == key) {
+                    int state = state(index);
+                    if (state == MOVED) {
+                        helpRehash();
+                        return next.get().containsInternal(key);
+                    }
+                    // marked key is frozen until the whole core is moved, so it is still present
+                    return state != REMOVED;
+                }
+                if (curKey == NULL_KEY) {
+                    return false;
+                }
+                if (curKey == MOVED_KEY) {
+                    helpRehash();
+                    return next.get().containsInternal(key);
+                }
+                index = nextIndex(index);
+            }
+            return false;
+        }
+
+        /**
+         * Adds the key to this core. In the {@code once} mode the key is moved from the previous core,
+         * so it is added only if it was never added to this core.
+         */
+        int addInternal(int key, boolean once) {
+            int index = index(key);
+            int probes = 0;
+            while (true) {
+                int curKey = map.get(index);
+                if (curKey == NULL_KEY) {
+                    if (map.compareAndSet(index, NULL_KEY, key)) {
+                        return CHANGED;
+                    }
+                    continue;
+                }
+                if (curKey == key) {
+                    if (once) {
+                        return UNCHANGED;
+                    }
+                    int state = state(index);
+                    if (state == PRESENT) {
+                        return UNCHANGED;
+                    }
+                    if (state != REMOVED) {
+                        helpRehash();
+                        return LOOK_FOR_NEXT;
+                    }
+                    if (compareAndSetState(index, REMOVED, PRESENT)) {
+                        tombstones.add(-1);
+                        return CHANGED;
+                    }
+                    continue;
+                }
+                if (curKey == MOVED_KEY) {
+                    helpRehash();
+                    return LOOK_FOR_NEXT;
+                }
+                if (++probes >= MAX_PROBES) {
+                    return NEEDS_REHASH;
+                }
+                index = nextIndex(index);
+            }
+        }
+
+        int removeInternal(int key) {
+            int index = index(key);
+            int probes = 0;
+            while (true) {
+                int curKey = map.get(index);
+                if (curKey == key) {
+                    int state = state(index);
+                    if (state == REMOVED) {
+                        return UNCHANGED;
+                    }
+                    if (state != PRESENT) {
+                        helpRehash();
+                        return LOOK_FOR_NEXT;
+                    }
+                    if (compareAndSetState(index, PRESENT, REMOVED)) {
+                        return CHANGED;
+                    }
+                    continue;
+                }
+                if (curKey == NULL_KEY) {
+                    return UNCHANGED;
+                }
+                if (curKey == MOVED_KEY) {
+                    helpRehash();
+                    return LOOK_FOR_NEXT;
+                }
+                if (++probes >= MAX_PROBES) {
+                    return UNCHANGED;
+                }
+                index = nextIndex(index);
+            }
+        }
+
+        @Override
+        void moveSlot(int index) {
+            if ((index & (GROUP_LENGTH - 1)) == 0) {
+                return; // the states of the group, they are moved with the keys
+            }
+            while (true) {
+                int curKey = map.get(index);
+                if (curKey == MOVED_KEY) {
+                    return;
+                }
+                if (curKey == NULL_KEY) {
+                    if (map.compareAndSet(index, NULL_KEY, MOVED_KEY)) {
+                        return;
+                    }
+                    continue;
+                }
+                int state = state(index);
+                if (state == MOVED) {
+                    return;
+                }
+                if (state == REMOVED) {
+                    if (compareAndSetState(index, REMOVED, MOVED)) {
+                        return;
+                    }
+                    continue;
+                }
+                if (state == PRESENT) {
+                    if (!compareAndSetState(index, PRESENT, MARKED)) {
+                        continue;
+                    }
+                }
+                moveToNext(curKey);
+                compareAndSetState(index, MARKED, MOVED);
+                return;
+            }
+        }
+
+        /**
+         * Returns the state of the key in a given slot.
+         */
+        int state(int index) {
+            return (map.get(index & -GROUP_LENGTH) >>> stateShift(index)) & STATE_MASK;
+        }
+
+        /**
+         * Atomically sets the state of the key in a given slot if it is the expected one.
+         * The states of other keys in the group may change concurrently, which is retried.
+         */
+        boolean compareAndSetState(int index, int expect, int update) {
+            int statesIndex = index & -GROUP_LENGTH;
+            int shift = stateShift(index);
+            while (true) {
+                int states = map.get(statesIndex);
+                if (((states >>> shift) & STATE_MASK) != expect) {
+                    return false;
+                }
+                if (map.compareAndSet(statesIndex, states, states ^ ((expect ^ update) << shift))) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Returns the position of the state for a key in a given slot within the states word.
+         */
+        private static int stateShift(int index) {
+            return ((index & (GROUP_LENGTH - 1)) - 1) * 2;
+        }
+
+        /**
+         * Returns the index in map to look for a key after a given one, it skips the states of groups.
+         */
+        int nextIndex(int index) {
+            int mask = map.length() - 1;
+            index = (index - 1) & mask;
+            return ((index & (GROUP_LENGTH - 1)) != 0) ? index : (index - 1) & mask;
+        }
+
+        /**
+         * Returns an initial index in map to look for a given key. The high bits of the hash choose the group,
+         * and the low ones choose the key in the group.
+         */
+        int index(int key) {
+            int hash = key * MAGIC;
+            int group = hash >>> shift;
+            int slot = ((hash & 0xFFFF) * GROUP_KEYS) >>> 16;
+            return (group << GROUP_SHIFT) + 1 + slot;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package lock_free_hashtable;
+
+/**
+ * Operation that accepts a (key, value) pair of ints.
+ */
+@FunctionalInterface
+public interface IntIntConsumer {
+    void accept(int key, int value);
+}
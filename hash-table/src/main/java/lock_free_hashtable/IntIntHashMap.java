@@ -1,7 +1,11 @@
 package lock_free_hashtable;
 
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntUnaryOperator;
 
 /**
  * Int-to-Int hash map with open addressing and linear probes.
@@ -10,6 +14,8 @@ public class IntIntHashMap {
     private static final int MAGIC = 0x9E3779B9; // golden ratio
     private static final int INITIAL_CAPACITY = 2; // !!! DO NOT CHANGE INITIAL CAPACITY !!!
     private static final int MAX_PROBES = 8; // max number of probes to find an item
+    private static final int MAX_CAPACITY = 1 << 29; // max capacity that is chosen for expected size
+    private static final int BUCKET_SIZE = 8; // number of (key, value) pairs, 64 bytes, in a bucket of CACHE_LINE_BUCKETS
 
     private static final int NULL_KEY = 0; // missing key (initial value)
     private static final int NULL_VALUE = 0; // missing value (initial value)
@@ -17,6 +23,16 @@ public class IntIntHashMap {
     private static final int NEEDS_REHASH = -1; // returned by putInternal to indicate that rehash is needed
     private static final int LOOK_FOR_NEXT = -2; // returned by putInternal to indicate that needed lookup in other table
     private static final int MOVED_VALUE = Integer.MIN_VALUE; // value moved during rehashing to new table
+    private static final int TRANSFER_STRIDE = 16; // number of (key, value) pairs in a chunk claimed by rehash helper
+    private static final int COMPACTION_CHECK_PERIOD = 64; // number of removes between checks for compaction
+    private static final int PROBES_SAMPLING_PERIOD = 64; // one of that many operations records its probes
+
+    // Modes of putInternal that define the new value for the key
+    private static final int PUT = 0; // puts value, or removes the key if value is DEL_VALUE
+    private static final int PUT_ONCE = 1; // puts value only if the key was never put, used to move the key to next core
+    private static final int PUT_IF_ABSENT = 2; // puts value only if the key is not present
+    private static final int REPLACE = 3; // puts value only if the current one is equal to expected
+    private static final int ADD = 4; // adds value to the current one, removes the key if the sum is zero
 
     // Checks is the value is in the range of allowed values
     private static boolean isValue(int value) {
@@ -28,7 +44,134 @@ public class IntIntHashMap {
         return isValue(value) ? value : 0;
     }
 
-    private final AtomicReference<Core> core = new AtomicReference<>(new Core(INITIAL_CAPACITY));
+    // Returns capacity that is enough to keep a given number of pairs without rehash
+    private static int capacityFor(long expectedSize) {
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < MAX_CAPACITY && capacity < 2 * expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private final StripedCounter size = new StripedCounter(); // number of present keys
+    private final StripedCounter[] probeHistogram = newProbeHistogram(); // sampled operations by number of probes
+    private final AtomicReference<Core> core;
+
+    private static StripedCounter[] newProbeHistogram() {
+        StripedCounter[] res = new StripedCounter[MAX_PROBES + 1];
+        for (int i = 0; i < res.length; i++) {
+            res[i] = new StripedCounter();
+        }
+        return res;
+    }
+
+    /**
+     * Layout of pairs that defines which slots are probed to find a key.
+     */
+    public enum Layout {
+        /**
+         * Probes go through the adjacent slots and may cross cache lines.
+         */
+        LINEAR_PROBING,
+        /**
+         * The map is split into buckets of 8 pairs, which is the size of a cache line, and probes wrap around
+         * the bucket. Rehash is needed only when the bucket is full. The array of pairs is not aligned
+         * to cache lines, so a bucket usually spans two of them, like 8 adjacent pairs of linear probing do.
+         */
+        CACHE_LINE_BUCKETS
+    }
+
+    /**
+     * Hash function that maps a key to its initial slot. The slot is defined by the high bits of the hash.
+     */
+    public enum Hash {
+        /**
+         * Multiplication by the golden ratio. It is the cheapest one and spreads sequential keys well,
+         * but keys that differ only in high bits, like multiples of a large power of two, collide.
+         */
+        GOLDEN_RATIO {
+            @Override
+            int apply(int key, int seed) {
+                return key * MAGIC;
+            }
+        },
+        /**
+         * Finalizer of MurmurHash3, which mixes all bits of the key into the high bits of the hash.
+         */
+        MURMUR3 {
+            @Override
+            int apply(int key, int seed) {
+                return murmur3(key);
+            }
+        },
+        /**
+         * Finalizer of MurmurHash3 applied to the key combined with a random seed chosen for every map,
+         * so colliding keys cannot be chosen in advance.
+         */
+        RANDOM_SEED {
+            @Override
+            int apply(int key, int seed) {
+                return murmur3(key ^ seed);
+            }
+        };
+
+        abstract int apply(int key, int seed);
+
+        private static int murmur3(int h) {
+            h ^= h >>> 16;
+            h *= 0x85EBCA6B;
+            h ^= h >>> 13;
+            h *= 0xC2B2AE35;
+            h ^= h >>> 16;
+            return h;
+        }
+    }
+
+    /**
+     * Creates new empty map.
+     */
+    public IntIntHashMap() {
+        core = new AtomicReference<>(new Core(INITIAL_CAPACITY, Layout.LINEAR_PROBING, Hash.GOLDEN_RATIO, 0,
+                size, probeHistogram));
+    }
+
+    /**
+     * Creates new empty map that can keep a given number of pairs without rehash.
+     *
+     * @param expectedSize expected number of pairs in the map.
+     * @throws IllegalArgumentException if expected size is negative.
+     */
+    public IntIntHashMap(int expectedSize) {
+        this(expectedSize, Layout.LINEAR_PROBING);
+    }
+
+    /**
+     * Creates new empty map with a given layout that can keep a given number of pairs without rehash.
+     *
+     * @param expectedSize expected number of pairs in the map.
+     * @param layout       layout of pairs in the map.
+     * @throws IllegalArgumentException if expected size is negative.
+     */
+    public IntIntHashMap(int expectedSize, Layout layout) {
+        this(expectedSize, layout, Hash.GOLDEN_RATIO);
+    }
+
+    /**
+     * Creates new empty map with a given layout and hash function that can keep a given number of pairs
+     * without rehash.
+     *
+     * @param expectedSize expected number of pairs in the map.
+     * @param layout       layout of pairs in the map.
+     * @param hash         hash function of keys.
+     * @throws IllegalArgumentException if expected size is negative.
+     */
+    public IntIntHashMap(int expectedSize, Layout layout, Hash hash) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Expected size must be non-negative: " + expectedSize);
+        }
+        int seed = (hash == Hash.RANDOM_SEED) ? ThreadLocalRandom.current().nextInt() : 0;
+        core = new AtomicReference<>(new Core(capacityFor(expectedSize), layout, hash, seed, size, probeHistogram));
+    }
 
     /**
      * Returns value for the corresponding key or zero if this key is not present.
@@ -60,7 +203,7 @@ public class IntIntHashMap {
         if (!isValue(value)) {
             throw new IllegalArgumentException("Invalid value: " + value);
         }
-        return toValue(putAndRehashWhileNeeded(key, value));
+        return toValue(putAndRehashWhileNeeded(key, value, NULL_VALUE, PUT));
     }
 
     /**
@@ -74,23 +217,446 @@ public class IntIntHashMap {
         if (key <= 0) {
             throw new IllegalArgumentException("Key must be positive: " + key);
         }
-        return toValue(putAndRehashWhileNeeded(key, DEL_VALUE));
+        return toValue(putAndRehashWhileNeeded(key, DEL_VALUE, NULL_VALUE, PUT));
+    }
+
+    /**
+     * Puts value for the corresponding key if this key is not present.
+     *
+     * @param key   a positive key.
+     * @param value a positive value.
+     * @return current value or zero if this key was not present and the value was put.
+     * @throws IllegalArgumentException if key or value are not positive, or value is equal to
+     *                                  {@link Integer#MAX_VALUE} which is reserved.
+     */
+    public int putIfAbsent(int key, int value) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Key must be positive: " + key);
+        }
+        if (!isValue(value)) {
+            throw new IllegalArgumentException("Invalid value: " + value);
+        }
+        return toValue(putAndRehashWhileNeeded(key, value, NULL_VALUE, PUT_IF_ABSENT));
+    }
+
+    /**
+     * Changes value for the corresponding key only if it is equal to the expected one.
+     *
+     * @param key      a positive key.
+     * @param expected a positive expected value.
+     * @param update   a positive new value.
+     * @return true if the value was changed.
+     * @throws IllegalArgumentException if key or values are not positive, or any value is equal to
+     *                                  {@link Integer#MAX_VALUE} which is reserved.
+     */
+    public boolean replace(int key, int expected, int update) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Key must be positive: " + key);
+        }
+        if (!isValue(expected)) {
+            throw new IllegalArgumentException("Invalid value: " + expected);
+        }
+        if (!isValue(update)) {
+            throw new IllegalArgumentException("Invalid value: " + update);
+        }
+        return putAndRehashWhileNeeded(key, update, expected, REPLACE) == expected;
+    }
+
+    /**
+     * Atomically adds delta to the value for the corresponding key, the missing key is treated as zero.
+     * The key is removed when the result is zero.
+     *
+     * @param key   a positive key.
+     * @param delta value to add.
+     * @return new value or zero if the key was removed.
+     * @throws IllegalArgumentException if key is not positive.
+     * @throws IllegalStateException    if the result is negative or is not less than {@link Integer#MAX_VALUE},
+     *                                  the value is not changed in this case.
+     */
+    public int addAndGet(int key, int delta) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Key must be positive: " + key);
+        }
+        return toValue(add(toValue(putAndRehashWhileNeeded(key, delta, NULL_VALUE, ADD)), delta));
+    }
+
+    /**
+     * Changes value for the corresponding key to the result of the function if the key is present.
+     * The key is removed when the function returns zero. The function may be applied several times
+     * under contention, so it should be side-effect-free.
+     *
+     * @param key      a positive key.
+     * @param function function that computes new value from the current one.
+     * @return new value or zero if the key was not present or was removed.
+     * @throws IllegalArgumentException if key is not positive or function returns negative value or
+     *                                  {@link Integer#MAX_VALUE} which is reserved.
+     */
+    public int computeIfPresent(int key, IntUnaryOperator function) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Key must be positive: " + key);
+        }
+        while (true) {
+            int curValue = get(key);
+            if (curValue == NULL_VALUE) {
+                return NULL_VALUE;
+            }
+            int newValue = function.applyAsInt(curValue);
+            if (newValue != NULL_VALUE && !isValue(newValue)) {
+                throw new IllegalArgumentException("Invalid value: " + newValue);
+            }
+            int update = (newValue == NULL_VALUE) ? DEL_VALUE : newValue;
+            if (putAndRehashWhileNeeded(key, update, curValue, REPLACE) == curValue) {
+                return newValue;
+            }
+        }
     }
 
-    private int putAndRehashWhileNeeded(int key, int value) {
+    /**
+     * Puts all pairs to the map, as if {@link #put(int, int)} was called for each pair in order.
+     * Pairs are loaded into a new core without CAS operations, and this core is published once as the next one
+     * for the current core. The current pairs are moved into it by regular rehash and do not override loaded ones.
+     * The batch is not atomic: readers keep using the current core until the slot of a key is moved, so a loaded
+     * pair takes effect at that moment during the call, and concurrent readers may see some pairs and not others.
+     *
+     * @param keys   positive keys.
+     * @param values positive values for the corresponding keys.
+     * @throws IllegalArgumentException if arrays have different lengths, any key or value are not positive,
+     *                                  or any value is equal to {@link Integer#MAX_VALUE} which is reserved.
+     */
+    public void putAll(int[] keys, int[] values) {
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException("Keys and values must have the same length: " +
+                    keys.length + " != " + values.length);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] <= 0) {
+                throw new IllegalArgumentException("Key must be positive: " + keys[i]);
+            }
+            if (!isValue(values[i])) {
+                throw new IllegalArgumentException("Invalid value: " + values[i]);
+            }
+        }
+        if (keys.length == 0) {
+            return;
+        }
         while (true) {
             Core curCore = core.get();
-            int oldValue = curCore.putInternal(key, value, false);
+            if (curCore.next.get() != null) {
+                core.compareAndSet(curCore, curCore.rehash());
+                continue;
+            }
+            Core loaded = curCore.load(keys, values, Math.max(capacityFor(keys.length), curCore.map.length() / 2));
+            if (curCore.next.compareAndSet(null, loaded)) {
+                size.add(loaded.loadedSize);
+                core.compareAndSet(curCore, curCore.rehash());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes values for the corresponding keys into the output array, or zeros for keys that are not present,
+     * as if {@link #get(int)} was called for each key in order.
+     * The core is read once and initial indices of all keys are computed up front, then the first slots
+     * of all keys are read in a separate pass, so the cache misses of different keys overlap.
+     * Keys which are not found in their first slot are looked up as usual.
+     *
+     * @param keys positive keys.
+     * @param out  array for values of the same length as keys, it is also used for indices, so nothing is allocated.
+     * @throws IllegalArgumentException if arrays have different lengths or any key is not positive.
+     */
+    public void getAll(int[] keys, int[] out) {
+        if (keys.length != out.length) {
+            throw new IllegalArgumentException("Keys and output must have the same length: " +
+                    keys.length + " != " + out.length);
+        }
+        Core curCore = core.get();
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] <= 0) {
+                throw new IllegalArgumentException("Key must be positive: " + keys[i]);
+            }
+            out[i] = curCore.index(keys[i]);
+        }
+        AtomicIntegerArray map = curCore.map;
+        for (int i = 0; i < keys.length; i++) {
+            int index = out[i];
+            int curKey = map.get(index);
+            int curValue = map.get(index + 1);
+            if ((curKey == keys[i] || curKey == NULL_KEY) && !isMarkedValue(curValue)) {
+                curCore.recordProbes(0);
+                // like getInternal, the empty slot means the key is not present, whatever its value is
+                out[i] = (curKey == NULL_KEY) ? NULL_VALUE : toValue(curValue);
+            } else {
+                out[i] = toValue(curCore.getInternal(keys[i]));
+            }
+        }
+    }
+
+    /**
+     * Puts all pairs to the map one by one, as if {@link #put(int, int)} was called for each pair in order,
+     * and writes old values or zeros into the output array. Unlike {@link #putAll(int[], int[])}, which loads
+     * the batch into a new core, it suits small batches for a large map, as pairs are put into the current core.
+     * Initial indices of all keys are computed up front and their first slots are read in a separate pass,
+     * so the cache misses of different keys overlap and the puts find the slots in cache.
+     *
+     * @param keys      positive keys.
+     * @param values    positive values for the corresponding keys.
+     * @param oldValues array for old values of the same length as keys, it is also used for indices.
+     * @throws IllegalArgumentException if arrays have different lengths, any key or value are not positive,
+     *                                  or any value is equal to {@link Integer#MAX_VALUE} which is reserved.
+     */
+    public void putEach(int[] keys, int[] values, int[] oldValues) {
+        if (keys.length != values.length || keys.length != oldValues.length) {
+            throw new IllegalArgumentException("Keys, values and old values must have the same length: " +
+                    keys.length + ", " + values.length + ", " + oldValues.length);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] <= 0) {
+                throw new IllegalArgumentException("Key must be positive: " + keys[i]);
+            }
+            if (!isValue(values[i])) {
+                throw new IllegalArgumentException("Invalid value: " + values[i]);
+            }
+        }
+        Core curCore = core.get();
+        for (int i = 0; i < keys.length; i++) {
+            oldValues[i] = curCore.index(keys[i]);
+        }
+        AtomicIntegerArray map = curCore.map;
+        for (int i = 0; i < keys.length; i++) {
+            map.get(oldValues[i]); // volatile read is not eliminated and brings the slot into cache
+        }
+        for (int i = 0; i < keys.length; i++) {
+            oldValues[i] = toValue(putAndRehashWhileNeeded(keys[i], values[i], NULL_VALUE, PUT));
+        }
+    }
+
+    /**
+     * Performs the action for each (key, value) pair in the map. Iteration is weakly consistent:
+     * every key is passed at most once, every key that is present during the whole iteration is passed,
+     * and keys that are put or removed concurrently may be passed or not.
+     * Iteration follows the chain of cores when the map is rehashed concurrently and does not allocate per pair.
+     *
+     * @param action action to perform for each pair.
+     */
+    public void forEach(IntIntConsumer action) {
+        // cores that were left because of rehash and the indices they were left at
+        Core[] visitedCores = new Core[4];
+        int[] visitedBounds = new int[4];
+        int depth = 0;
+        Core curCore = core.get();
+        int index = 0;
+        while (index < curCore.map.length()) {
+            int curKey = curCore.map.get(index);
+            int curValue = curCore.map.get(index + 1);
+            if (isMarkedValue(curValue)) {
+                if (depth == visitedCores.length) {
+                    visitedCores = Arrays.copyOf(visitedCores, 2 * depth);
+                    visitedBounds = Arrays.copyOf(visitedBounds, 2 * depth);
+                }
+                visitedCores[depth] = curCore;
+                visitedBounds[depth] = index;
+                depth++;
+                curCore.helpRehash();
+                curCore = curCore.next.get();
+                index = 0;
+                continue;
+            }
+            if (isValue(curValue) && !isVisited(visitedCores, visitedBounds, depth, curKey)) {
+                action.accept(curKey, curValue);
+            }
+            index += 2;
+        }
+    }
+
+    // Checks if the key was already met in one of the left cores before the index it was left at
+    private static boolean isVisited(Core[] visitedCores, int[] visitedBounds, int depth, int key) {
+        for (int i = 0; i < depth; i++) {
+            int index = visitedCores[i].indexOf(key);
+            if (index >= 0 && index < visitedBounds[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes (key, value) pairs of the map into the arrays. Pairs are collected by {@link #forEach(IntIntConsumer)},
+     * so the snapshot is weakly consistent. If arrays are too short, only the first pairs are written.
+     *
+     * @param keys   array for keys.
+     * @param values array for the corresponding values.
+     * @return number of pairs in the map, which may be greater than length of the arrays.
+     * @throws IllegalArgumentException if arrays have different lengths.
+     */
+    public int snapshotTo(int[] keys, int[] values) {
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException("Keys and values must have the same length: " +
+                    keys.length + " != " + values.length);
+        }
+        Snapshot snapshot = new Snapshot(keys, values);
+        forEach(snapshot);
+        return snapshot.size;
+    }
+
+    private static class Snapshot implements IntIntConsumer {
+        final int[] keys;
+        final int[] values;
+        int size;
+
+        Snapshot(int[] keys, int[] values) {
+            this.keys = keys;
+            this.values = values;
+        }
+
+        @Override
+        public void accept(int key, int value) {
+            if (size < keys.length) {
+                keys[size] = key;
+                values[size] = value;
+            }
+            size++;
+        }
+    }
+
+    /**
+     * Returns number of keys in the map. The result is exact only when there are no concurrent updates.
+     *
+     * @return number of keys in the map.
+     */
+    public int size() {
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, size.sum()));
+    }
+
+    /**
+     * Returns capacity of the current core, that is the max number of pairs it can keep.
+     *
+     * @return capacity of the current core.
+     */
+    public int capacity() {
+        return core.get().map.length() / 2;
+    }
+
+    /**
+     * Returns ratio of the number of keys to the capacity of the current core.
+     *
+     * @return load factor of the current core.
+     */
+    public double loadFactor() {
+        return (double) size() / capacity();
+    }
+
+    /**
+     * Returns number of removed values that still take slots in the current core.
+     *
+     * @return number of removed values in the current core.
+     */
+    public long tombstoneCount() {
+        return Math.max(0, core.get().tombstones.sum());
+    }
+
+    /**
+     * Returns number of cores in the chain starting from the current one, that are being moved to the next cores.
+     * It is zero when there is no rehash in progress.
+     *
+     * @return number of cores that are being moved.
+     */
+    public int migratingCores() {
+        int res = 0;
+        for (Core curCore = core.get(); curCore.next.get() != null; curCore = curCore.next.get()) {
+            res++;
+        }
+        return res;
+    }
+
+    /**
+     * Returns histogram of the number of probes for get and put operations. Element {@code i} is the number of
+     * operations that made {@code i} probes before they found the key or an empty slot, and the last element is
+     * the number of operations that exceeded the max number of probes. Only one of 64 operations is recorded
+     * on average.
+     *
+     * @return sampled number of operations for every number of probes.
+     */
+    public long[] probeHistogram() {
+        long[] res = new long[probeHistogram.length];
+        for (int i = 0; i < res.length; i++) {
+            res[i] = probeHistogram[i].sum();
+        }
+        return res;
+    }
+
+    private int putAndRehashWhileNeeded(int key, int value, int expected, int mode) {
+        while (true) {
+            Core curCore = core.get();
+            int oldValue = curCore.putInternal(key, value, expected, mode);
             if (oldValue == NEEDS_REHASH) {
                 core.compareAndSet(curCore, curCore.rehash());
             } else if (oldValue == LOOK_FOR_NEXT) {
                 core.compareAndSet(curCore, curCore.next.get());
             } else {
+                int newValue = update(oldValue, value, expected, mode);
+                if (newValue != oldValue) {
+                    onUpdate(curCore, oldValue, newValue);
+                }
                 return oldValue;
             }
         }
     }
 
+    /**
+     * Updates counters after the value in a given core was changed and starts compaction
+     * of the core if it is filled with removed values.
+     */
+    private void onUpdate(Core curCore, int oldValue, int newValue) {
+        if (isValue(oldValue) != isValue(newValue)) {
+            size.add(isValue(newValue) ? 1 : -1);
+        }
+        if (oldValue == DEL_VALUE) {
+            curCore.tombstones.add(-1);
+        } else if (newValue == DEL_VALUE) {
+            long cell = curCore.tombstones.add(1);
+            if (cell % COMPACTION_CHECK_PERIOD == 0 && curCore.needsCompaction()) {
+                core.compareAndSet(curCore, curCore.rehash());
+            }
+        }
+    }
+
+    /**
+     * Returns the value for the key after {@link #ADD} of delta to the old value.
+     *
+     * @throws IllegalStateException if the result is out of the range of allowed values.
+     */
+    private static int add(int oldValue, int delta) {
+        long sum = (long) toValue(oldValue) + delta;
+        if (sum == NULL_VALUE) {
+            return isValue(oldValue) ? DEL_VALUE : oldValue;
+        }
+        if (sum < 0 || sum >= DEL_VALUE) {
+            throw new IllegalStateException("Invalid value: " + sum);
+        }
+        return (int) sum;
+    }
+
+    /**
+     * Returns the new value for the key with a given old value in a given mode of putInternal.
+     */
+    private static int update(int oldValue, int value, int expected, int mode) {
+        switch (mode) {
+            case PUT:
+                return value;
+            case PUT_ONCE:
+                return (oldValue == NULL_VALUE) ? value : oldValue;
+            case PUT_IF_ABSENT:
+                return isValue(oldValue) ? oldValue : value;
+            case REPLACE:
+                return (oldValue == expected) ? value : oldValue;
+            case ADD:
+                return add(oldValue, value);
+            default:
+                throw new AssertionError("Unknown mode: " + mode);
+        }
+    }
+
     static private boolean isMarkedValue(int value) {
         return ((value & Integer.MIN_VALUE) != 0);
     }
@@ -106,18 +672,94 @@ public class IntIntHashMap {
     private static class Core {
         final AtomicIntegerArray map; // pairs of (key, value) here
         final int shift;
+        final Layout layout;
+        final Hash hash;
+        final int seed; // seed of the hash, the same for all cores
+        final int probeMask; // probes wrap around the aligned part of the map of this size
         final AtomicReference<Core> next;
+        final int chunks; // number of chunks the map is split into for migration
+        final AtomicInteger transferIndex; // next chunk to be claimed by a helper
+        final AtomicIntegerArray movedChunks; // 1 for every chunk that was fully moved to next core
+        final AtomicInteger movedChunksCount;
+        final StripedCounter size; // number of present keys in the whole map, shared by all cores
+        final StripedCounter tombstones; // number of removed values in this core
+        final StripedCounter[] probeHistogram; // shared by all cores
+        int loadedSize; // number of pairs loaded into the core before it was published, see putAll
 
         /**
          * Creates new core with a given capacity for (key, value) pair.
          * The actual size of the map is twice as big.
          */
-        Core(int capacity) {
+        Core(int capacity, Layout layout, Hash hash, int seed, StripedCounter size, StripedCounter[] probeHistogram) {
             map = new AtomicIntegerArray(2 * capacity);
             int mask = capacity - 1;
             assert mask > 0 && (mask & capacity) == 0 : "Capacity must be power of 2: " + capacity;
             shift = 32 - Integer.bitCount(mask);
+            this.layout = layout;
+            this.hash = hash;
+            this.seed = seed;
+            probeMask = (layout == Layout.CACHE_LINE_BUCKETS) ? 2 * Math.min(BUCKET_SIZE, capacity) - 1 : 2 * capacity - 1;
             next = new AtomicReference<>();
+            chunks = (capacity + TRANSFER_STRIDE - 1) / TRANSFER_STRIDE;
+            transferIndex = new AtomicInteger();
+            movedChunks = new AtomicIntegerArray(chunks);
+            movedChunksCount = new AtomicInteger();
+            this.size = size;
+            tombstones = new StripedCounter();
+            this.probeHistogram = probeHistogram;
+        }
+
+        private void recordProbes(int probes) {
+            if (ThreadLocalRandom.current().nextInt(PROBES_SAMPLING_PERIOD) == 0) {
+                probeHistogram[probes].add(1);
+            }
+        }
+
+        /**
+         * Creates new core for the same map with a given capacity.
+         */
+        Core newCore(int capacity) {
+            return new Core(capacity, layout, hash, seed, size, probeHistogram);
+        }
+
+        /**
+         * Creates new core for the same map with all given pairs and at least a given capacity.
+         * The core is not published yet, so pairs are written without CAS.
+         */
+        Core load(int[] keys, int[] values, int capacity) {
+            while (true) {
+                Core res = newCore(capacity);
+                if (res.putAllPrivate(keys, values)) {
+                    return res;
+                }
+                capacity *= 2;
+            }
+        }
+
+        private boolean putAllPrivate(int[] keys, int[] values) {
+            for (int i = 0; i < keys.length; i++) {
+                if (!putPrivate(keys[i], values[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean putPrivate(int key, int value) {
+            int index = index(key);
+            for (int probes = 0; probes < MAX_PROBES; probes++) {
+                int curKey = map.get(index);
+                if (curKey == NULL_KEY || curKey == key) {
+                    if (curKey == NULL_KEY) {
+                        loadedSize++;
+                    }
+                    map.lazySet(index, key);
+                    map.lazySet(index + 1, value);
+                    return true;
+                }
+                index = nextIndex(index);
+            }
+            return false;
         }
 
         int getInternal(int key) {
@@ -127,70 +769,76 @@ public class IntIntHashMap {
                 int curKey = map.get(index);
                 int curValue = map.get(index + 1);
                 if (curValue == MOVED_VALUE) {
-                    helpRehash(index + 2);
+                    helpRehash();
                     return next.get().getInternal(key);
                 }
                 if (isMarkedValue(curValue)) {
-                    helpRehash(index);
-                    //helpRehashOne(index);
-                    return (curKey == key) ? getUnmarkedValue(curValue) : next.get().getInternal(key);
+                    // marked value is frozen until the whole core is moved, so it is still actual
+                    if (curKey == key) {
+                        return getUnmarkedValue(curValue);
+                    }
+                    helpRehash();
+                    return next.get().getInternal(key);
                 }
                 if (curKey == NULL_KEY) {
+                    recordProbes(probes);
                     return NULL_VALUE;
                 }
                 if (curKey == key) {
+                    recordProbes(probes);
                     return curValue;
                 }
                 if (++probes >= MAX_PROBES) {
+                    recordProbes(probes);
                     return NULL_VALUE;
                 }
-                if (index == 0) {
-                    index = map.length();
-                }
-                index -= 2;
+                index = nextIndex(index);
             }
         }
 
-        private void helpRehashOne(int index) {
-            Core curNext = next.get();
-            int curKey = map.get(index);
-            int curValue = map.get(index + 1);
-            if (isMarkedValue(curValue)) {
-                int curRealValue = getUnmarkedValue(curValue);
-                Core curRealNext = curNext;
-                boolean moved = false;
-                while (!moved) {
-                    switch (curRealNext.putInternal(curKey, curRealValue, true)) {
-                        case NEEDS_REHASH: {
-                            curRealNext = curRealNext.rehash();
-                            break;
-                        }
-                        case LOOK_FOR_NEXT: {
-                            curRealNext = curRealNext.next.get();
-                            break;
-                        }
-                        default: {
-                            moved = true;
-                            break;
+        /**
+         * Helps to move this core to the next one and returns only when all chunks are moved.
+         * Every helper claims its own chunks, so the work is not repeated while there are unclaimed chunks.
+         * When all chunks are claimed, the helper moves the chunks which are still in progress by itself,
+         * so the operation stays lock-free even if the claimers are stalled.
+         */
+        private void helpRehash() {
+            while (movedChunksCount.get() < chunks) {
+                if (transferIndex.get() >= chunks) {
+                    for (int chunk = 0; chunk < chunks; chunk++) {
+                        if (movedChunks.get(chunk) == 0) {
+                            moveChunk(chunk);
                         }
                     }
+                    return;
                 }
-                map.compareAndSet(index + 1, curValue, MOVED_VALUE);
+                int chunk = transferIndex.getAndIncrement();
+                if (chunk < chunks) {
+                    moveChunk(chunk);
+                }
+            }
+        }
+
+        private void moveChunk(int chunk) {
+            int end = Math.min(map.length(), (chunk + 1) * 2 * TRANSFER_STRIDE);
+            for (int index = chunk * 2 * TRANSFER_STRIDE; index < end; index += 2) {
+                moveSlot(index);
+            }
+            if (movedChunks.compareAndSet(chunk, 0, 1)) {
+                movedChunksCount.incrementAndGet();
             }
         }
 
-        private void helpRehash(int index) {
-            Core curNext = next.get();
-            while (index < map.length()) {
+        private void moveSlot(int index) {
+            while (true) {
                 int curKey = map.get(index);
                 int curValue = map.get(index + 1);
                 if (curValue == MOVED_VALUE) {
-                    index += 2;
-                    continue;
+                    return;
                 }
                 if (curKey == NULL_KEY || curValue == NULL_VALUE || curValue == DEL_VALUE) {
                     if (map.compareAndSet(index + 1, curValue, MOVED_VALUE)) {
-                        index += 2;
+                        return;
                     }
                     continue;
                 }
@@ -199,12 +847,16 @@ public class IntIntHashMap {
                         continue;
                     }
                     curValue = getMarkedValue(curValue);
+                    Core curNext = next.get();
+                    if (curNext.loadedSize > 0 && isValue(curNext.getInternal(curKey))) {
+                        size.add(-1); // the key was loaded into the next core by putAll, so it is counted twice
+                    }
                 }
                 int curRealValue = getUnmarkedValue(curValue);
-                Core curRealNext = curNext;
+                Core curRealNext = next.get();
                 boolean moved = false;
                 while (!moved) {
-                    switch (curRealNext.putInternal(curKey, curRealValue, true)) {
+                    switch (curRealNext.putInternal(curKey, curRealValue, NULL_VALUE, PUT_ONCE)) {
                         case NEEDS_REHASH: {
                             curRealNext = curRealNext.rehash();
                             break;
@@ -220,26 +872,25 @@ public class IntIntHashMap {
                     }
                 }
                 map.compareAndSet(index + 1, curValue, MOVED_VALUE);
-                index += 2;
+                return;
             }
         }
 
-        int putInternal(int key, int value, boolean once) {
+        int putInternal(int key, int value, int expected, int mode) {
             int index = index(key);
             int probes = 0;
             int curKey = map.get(index);
             int curValue = map.get(index + 1);
             for (; curKey != key; curKey = map.get(index), curValue = map.get(index + 1)) {
-                if (curValue == MOVED_VALUE) {
-                    helpRehash(index + 2);
-                    return LOOK_FOR_NEXT;
-                }
                 if (isMarkedValue(curValue)) {
-                    helpRehash(index);
-                    //helpRehashOne(index);
+                    helpRehash();
                     return LOOK_FOR_NEXT;
                 }
                 if (curKey == NULL_KEY) {
+                    if (mode == REPLACE) {
+                        recordProbes(probes);
+                        return NULL_VALUE;
+                    }
                     if (map.compareAndSet(index, NULL_KEY, key) || (map.get(index) == key)) {
                         break;
                     } else {
@@ -247,56 +898,99 @@ public class IntIntHashMap {
                     }
                 }
                 if (++probes >= MAX_PROBES) {
-                    return NEEDS_REHASH;
+                    recordProbes(probes);
+                    // like getInternal, the key is not present, so replace fails without rehash
+                    return (mode == REPLACE) ? NULL_VALUE : NEEDS_REHASH;
                 }
-                if (index == 0) {
-                    index = map.length();
-                }
-                index -= 2;
+                index = nextIndex(index);
             }
+            recordProbes(probes);
             while (true) {
                 if (curValue == MOVED_VALUE) {
-                    helpRehash(index + 2);
+                    helpRehash();
                     return LOOK_FOR_NEXT;
                 } else if (isMarkedValue(curValue)) {
-                    helpRehash(index);
-                    //helpRehashOne(index);
-                    return once ? NULL_VALUE : LOOK_FOR_NEXT;
-                } else if (curValue == DEL_VALUE) {
-                    if (once || map.compareAndSet(index + 1, DEL_VALUE, value)) {
-                        return NULL_VALUE;
-                    }
-                } else if (curValue == NULL_VALUE) {
-                    if (map.compareAndSet(index + 1, NULL_VALUE, value)) {
-                        return NULL_VALUE;
-                    }
-                } else {
-                    if (once || map.compareAndSet(index + 1, curValue, value)) {
-                        return curValue;
-                    }
+                    helpRehash();
+                    return (mode == PUT_ONCE) ? NULL_VALUE : LOOK_FOR_NEXT;
+                }
+                int newValue = update(curValue, value, expected, mode);
+                if (newValue == curValue || map.compareAndSet(index + 1, curValue, newValue)) {
+                    return curValue;
                 }
                 curValue = map.get(index + 1);
             }
+        }
 
+        /**
+         * Returns index of the key in the map or -1 if the key was never put into this core.
+         */
+        int indexOf(int key) {
+            int index = index(key);
+            for (int probes = 0; probes < MAX_PROBES; probes++) {
+                int curKey = map.get(index);
+                if (curKey == key) {
+                    return index;
+                }
+                if (curKey == NULL_KEY) {
+                    return -1;
+                }
+                index = nextIndex(index);
+            }
+            return -1;
+        }
+
+        /**
+         * Returns true if the removed values dominate in the core, and either they take a quarter of the core,
+         * or present keys take less than 1/16 of the core. In this case the core shall be moved to the same size
+         * or smaller core.
+         */
+        boolean needsCompaction() {
+            int capacity = map.length() / 2;
+            long curTombstones = tombstones.sum();
+            long curSize = size.sum();
+            return curTombstones >= curSize && (curTombstones >= capacity / 4 || 16 * curSize <= capacity);
+        }
+
+        /**
+         * Returns capacity of the next core. The capacity is doubled unless the most of used slots are removed values.
+         * In the latter case the capacity is chosen to keep the present keys at a quarter of the capacity at most,
+         * which moves them to the same size or smaller core.
+         */
+        int nextCapacity() {
+            int capacity = map.length() / 2;
+            long curSize = Math.max(size.sum(), 0);
+            int target = capacityFor(2 * curSize);
+            if (target <= capacity && tombstones.sum() >= curSize) {
+                return target;
+            }
+            return 2 * capacity;
         }
 
         Core rehash() {
             Core res = next.get();
             if (res == null) {
-                res = new Core(map.length());
+                res = newCore(nextCapacity());
                 if (!next.compareAndSet(null, res)) {
                     res = next.get();
                 }
             }
-            helpRehash(0);
+            helpRehash();
             return res;
         }
 
+        /**
+         * Returns the index in map to look for a key after a given one.
+         * Probes go down and wrap around the part of the map defined by the layout.
+         */
+        int nextIndex(int index) {
+            return (index & ~probeMask) | ((index - 2) & probeMask);
+        }
+
         /**
          * Returns an initial index in map to look for a given key.
          */
         int index(int key) {
-            return ((key * MAGIC) >>> shift) * 2;
+            return (hash.apply(key, seed) >>> shift) * 2;
         }
     }
 }
\ No newline at end of file
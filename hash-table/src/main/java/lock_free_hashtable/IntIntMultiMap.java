@@ -0,0 +1,421 @@
+package lock_free_hashtable;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static lock_free_hashtable.AbstractCore.CHANGED;
+import static lock_free_hashtable.AbstractCore.LOOK_FOR_NEXT;
+import static lock_free_hashtable.AbstractCore.NEEDS_REHASH;
+import static lock_free_hashtable.AbstractCore.UNCHANGED;
+
+/**
+ * Int-to-Int multimap with open addressing and linear probes, that is a set of (key, value) pairs.
+ * It uses the same lock-free algorithm as {@link IntHashSet}, every pair is packed into a single long
+ * of {@link AtomicLongArray}, so it is added and removed with a single CAS.
+ *
+ * <p>Pairs are hashed by key, so the values of a key are kept in the probe sequence of the key
+ * and {@link #values(int)} finds them in one pass. A key may have any number of values: the probes limit counts
+ * runs of other keys rather than slots, and operations on a pair take time proportional to the number of values
+ * of its key. The state of a pair is kept in the sign bits of its key and value: the removed pair keeps its slot
+ * with the sign bit of the value, and the pair that is moved to the next core is marked with the sign bit of the key.
+ * The moved pair keeps its slot with both sign bits, so a stalled rehash helper never adds it to the next core
+ * again after it was removed there.
+ */
+public class IntIntMultiMap {
+    private static final int MAGIC = 0x9E3779B9; // golden ratio
+    private static final int INITIAL_CAPACITY = 2; // capacity of the new map
+    private static final int MAX_PROBES = 8; // max number of runs of other keys to probe to find an item
+    private static final int MAX_CAPACITY = 1 << 29; // max capacity that is chosen for expected size
+
+    private static final long NULL_ENTRY = 0L; // missing pair (initial value)
+    private static final long DEL_BIT = 1L << 31; // set for removed pair
+    private static final long MARK_BIT = Long.MIN_VALUE; // set for pair that is moved to next core
+    private static final long MOVED_BITS = MARK_BIT | DEL_BIT; // set for pair moved during rehashing to new table
+    private static final long MOVED_ENTRY = Long.MIN_VALUE; // empty slot moved during rehashing to new table
+    private static final int TRANSFER_STRIDE = 8; // number of pairs in a chunk claimed by rehash helper
+    private static final int COMPACTION_CHECK_PERIOD = 64; // number of removes between checks for compaction
+
+    // Returns capacity that is enough to keep a given number of pairs without rehash
+    private static int capacityFor(long expectedSize) {
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < MAX_CAPACITY && capacity < 2 * expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private final StripedCounter size = new StripedCounter(); // number of present pairs
+    private final AtomicReference<Core> core;
+
+    /**
+     * Creates new empty multimap.
+     */
+    public IntIntMultiMap() {
+        core = new AtomicReference<>(new Core(INITIAL_CAPACITY, size));
+    }
+
+    /**
+     * Creates new empty multimap that can keep a given number of pairs without rehash.
+     *
+     * @param expectedSize expected number of pairs in the multimap.
+     * @throws IllegalArgumentException if expected size is negative.
+     */
+    public IntIntMultiMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Expected size must be non-negative: " + expectedSize);
+        }
+        core = new AtomicReference<>(new Core(capacityFor(expectedSize), size));
+    }
+
+    /**
+     * Returns true if the pair is present in the multimap.
+     *
+     * @param key   a positive key.
+     * @param value a positive value.
+     * @return true if the pair is present.
+     * @throws IllegalArgumentException if key or value are not positive.
+     */
+    public boolean contains(int key, int value) {
+        return core.get().containsInternal(entry(key, value));
+    }
+
+    /**
+     * Adds the pair to the multimap and returns true if it was not present.
+     *
+     * @param key   a positive key.
+     * @param value a positive value.
+     * @return true if the pair was not present.
+     * @throws IllegalArgumentException if key or value are not positive.
+     */
+    public boolean add(int key, int value) {
+        long entry = entry(key, value);
+        while (true) {
+            Core curCore = core.get();
+            int res = curCore.addInternal(entry, false);
+            if (res == NEEDS_REHASH) {
+                core.compareAndSet(curCore, curCore.rehash());
+            } else if (res == LOOK_FOR_NEXT) {
+                core.compareAndSet(curCore, curCore.next.get());
+            } else {
+                if (res == CHANGED) {
+                    size.add(1);
+                }
+                return res == CHANGED;
+            }
+        }
+    }
+
+    /**
+     * Removes the pair from the multimap and returns true if it was present.
+     *
+     * @param key   a positive key.
+     * @param value a positive value.
+     * @return true if the pair was present.
+     * @throws IllegalArgumentException if key or value are not positive.
+     */
+    public boolean remove(int key, int value) {
+        long entry = entry(key, value);
+        while (true) {
+            Core curCore = core.get();
+            int res = curCore.removeInternal(entry);
+            if (res == LOOK_FOR_NEXT) {
+                core.compareAndSet(curCore, curCore.next.get());
+            } else {
+                if (res == CHANGED) {
+                    size.add(-1);
+                    long cell = curCore.tombstones.add(1);
+                    if (cell % COMPACTION_CHECK_PERIOD == 0 && curCore.needsCompaction()) {
+                        core.compareAndSet(curCore, curCore.rehash());
+                    }
+                }
+                return res == CHANGED;
+            }
+        }
+    }
+
+    /**
+     * Returns the values of the key. The result is weakly consistent: it contains every value that is present
+     * during the whole call, and the values that are added or removed concurrently may be in it or not.
+     *
+     * @param key a positive key.
+     * @return the values of the key in no particular order.
+     * @throws IllegalArgumentException if key is not positive.
+     */
+    public int[] values(int key) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Key must be positive: " + key);
+        }
+        return core.get().valuesInternal(key);
+    }
+
+    /**
+     * Returns the number of pairs in the multimap. The result is exact only when there are no concurrent updates.
+     */
+    public int size() {
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, size.sum()));
+    }
+
+    // Packs the pair into a single long
+    private static long entry(int key, int value) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Key must be positive: " + key);
+        }
+        if (value <= 0) {
+            throw new IllegalArgumentException("Invalid value: " + value);
+        }
+        return ((long) key << 32) | value;
+    }
+
+    static private boolean isMarkedEntry(long entry) {
+        return ((entry & MARK_BIT) != 0);
+    }
+
+    static private boolean isRemovedEntry(long entry) {
+        return ((entry & DEL_BIT) != 0);
+    }
+
+    static private boolean isMovedEntry(long entry) {
+        return entry == MOVED_ENTRY || (entry & MOVED_BITS) == MOVED_BITS;
+    }
+
+    // Returns the pair that occupies the slot regardless of its state
+    static private long getSlotEntry(long entry) {
+        return (entry & ~(MARK_BIT | DEL_BIT));
+    }
+
+    // Returns the key of the pair that is not marked
+    static private int getKey(long entry) {
+        return (int) (entry >>> 32);
+    }
+
+    // Checks if the slot of a pair that is not marked starts a run of pairs with other key than the given one
+    static private boolean isOtherRun(long entry, long prevEntry, int key) {
+        return getKey(entry) != key && getKey(entry) != getKey(prevEntry);
+    }
+
+    private static class Core extends AbstractCore<Core> {
+        final AtomicLongArray map; // packed pairs here
+        final int shift;
+
+        /**
+         * Creates new core with a given capacity for pairs.
+         */
+        Core(int capacity, StripedCounter size) {
+            super(capacity, TRANSFER_STRIDE, size);
+            map = new AtomicLongArray(capacity);
+            int mask = capacity - 1;
+            assert mask > 0 && (mask & capacity) == 0 : "Capacity must be power of 2: " + capacity;
+            shift = 32 - Integer.bitCount(mask);
+        }
+
+        @Override
+        int capacity() {
+            return map.length();
+        }
+
+        @Override
+        int capacityFor(long expectedSize) {
+            return IntIntMultiMap.capacityFor(expectedSize);
+        }
+
+        @Override
+        Core newCore(int capacity) {
+            return new Core(capacity, size);
+        }
+
+        @Override
+        int addMoved(long entry) {
+            return addInternal(entry, true);
+        }
+
+        boolean containsInternal(long entry) {
+            int key = getKey(entry);
+            int index = index(key);
+            long prevEntry = NULL_ENTRY;
+            int probes = 0;
+            int slots = 0;
+            while (true) {
+                long curEntry = map.get(index);
+                if (curEntry == entry) {
+                    return true;
+                }
+                if (curEntry == NULL_ENTRY) {
+                    return false;
+                }
+                if (getSlotEntry(curEntry) == entry && !isMovedEntry(curEntry)) {
+                    // marked pair is frozen until the whole core is moved, so it is still present
+                    return isMarkedEntry(curEntry);
+                }
+                if (isMarkedEntry(curEntry)) {
+                    helpRehash();
+                    return next.get().containsInternal(entry);
+                }
+                if ((isOtherRun(curEntry, prevEntry, key) && ++probes >= MAX_PROBES) || ++slots >= map.length()) {
+                    return false;
+                }
+                prevEntry = curEntry;
+                index = nextIndex(index);
+            }
+        }
+
+        /**
+         * Adds the pair to this core. In the {@code once} mode the pair is moved from the previous core,
+         * so it is added only if it was never added to this core.
+         */
+        int addInternal(long entry, boolean once) {
+            int key = getKey(entry);
+            int index = index(key);
+            long prevEntry = NULL_ENTRY;
+            int probes = 0;
+            int slots = 0;
+            while (true) {
+                long curEntry = map.get(index);
+                if (curEntry == entry) {
+                    return UNCHANGED;
+                }
+                if (curEntry == NULL_ENTRY) {
+                    if (map.compareAndSet(index, NULL_ENTRY, entry)) {
+                        return CHANGED;
+                    }
+                    continue;
+                }
+                if (getSlotEntry(curEntry) == entry) {
+                    if (once) {
+                        return UNCHANGED;
+                    }
+                    if (isMarkedEntry(curEntry)) {
+                        helpRehash();
+                        return LOOK_FOR_NEXT;
+                    }
+                    if (map.compareAndSet(index, curEntry, entry)) {
+                        tombstones.add(-1);
+                        return CHANGED;
+                    }
+                    continue;
+                }
+                if (isMarkedEntry(curEntry)) {
+                    helpRehash();
+                    return LOOK_FOR_NEXT;
+                }
+                if ((isOtherRun(curEntry, prevEntry, key) && ++probes >= MAX_PROBES) || ++slots >= map.length()) {
+                    return NEEDS_REHASH;
+                }
+                prevEntry = curEntry;
+                index = nextIndex(index);
+            }
+        }
+
+        int removeInternal(long entry) {
+            int key = getKey(entry);
+            int index = index(key);
+            long prevEntry = NULL_ENTRY;
+            int probes = 0;
+            int slots = 0;
+            while (true) {
+                long curEntry = map.get(index);
+                if (curEntry == entry) {
+                    if (map.compareAndSet(index, entry, entry | DEL_BIT)) {
+                        return CHANGED;
+                    }
+                    continue;
+                }
+                if (curEntry == NULL_ENTRY) {
+                    return UNCHANGED;
+                }
+                if (isMarkedEntry(curEntry)) {
+                    helpRehash();
+                    return LOOK_FOR_NEXT;
+                }
+                if (getSlotEntry(curEntry) == entry) {
+                    return UNCHANGED;
+                }
+                if ((isOtherRun(curEntry, prevEntry, key) && ++probes >= MAX_PROBES) || ++slots >= map.length()) {
+                    return UNCHANGED;
+                }
+                prevEntry = curEntry;
+                index = nextIndex(index);
+            }
+        }
+
+        /**
+         * Collects the values of the key that are present. When a marked pair is met, the values are collected
+         * again in the next core, as the collected ones may be removed there after the move.
+         */
+        int[] valuesInternal(int key) {
+            int[] values = new int[4];
+            int count = 0;
+            int index = index(key);
+            long prevEntry = NULL_ENTRY;
+            int probes = 0;
+            int slots = 0;
+            while (true) {
+                long curEntry = map.get(index);
+                if (curEntry == NULL_ENTRY) {
+                    break;
+                }
+                if (isMarkedEntry(curEntry)) {
+                    helpRehash();
+                    return next.get().valuesInternal(key);
+                }
+                if (getKey(curEntry) == key && !isRemovedEntry(curEntry)) {
+                    if (count == values.length) {
+                        values = Arrays.copyOf(values, 2 * count);
+                    }
+                    values[count++] = (int) curEntry;
+                }
+                if ((isOtherRun(curEntry, prevEntry, key) && ++probes >= MAX_PROBES) || ++slots >= map.length()) {
+                    break;
+                }
+                prevEntry = curEntry;
+                index = nextIndex(index);
+            }
+            return Arrays.copyOf(values, count);
+        }
+
+        @Override
+        void moveSlot(int index) {
+            while (true) {
+                long curEntry = map.get(index);
+                if (isMovedEntry(curEntry)) {
+                    return;
+                }
+                if (curEntry == NULL_ENTRY) {
+                    if (map.compareAndSet(index, NULL_ENTRY, MOVED_ENTRY)) {
+                        return;
+                    }
+                    continue;
+                }
+                if (isRemovedEntry(curEntry)) {
+                    if (map.compareAndSet(index, curEntry, curEntry | MOVED_BITS)) {
+                        return;
+                    }
+                    continue;
+                }
+                if (!isMarkedEntry(curEntry)) {
+                    if (!map.compareAndSet(index, curEntry, curEntry | MARK_BIT)) {
+                        continue;
+                    }
+                    curEntry |= MARK_BIT;
+                }
+                moveToNext(getSlotEntry(curEntry));
+                map.compareAndSet(index, curEntry, curEntry | MOVED_BITS);
+                return;
+            }
+        }
+
+        /**
+         * Returns the index in map to look for a pair after a given one.
+         */
+        int nextIndex(int index) {
+            return (index - 1) & (map.length() - 1);
+        }
+
+        /**
+         * Returns an initial index in map to look for the pairs of a given key.
+         */
+        int index(int key) {
+            return (key * MAGIC) >>> shift;
+        }
+    }
+}
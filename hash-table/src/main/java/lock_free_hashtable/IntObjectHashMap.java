@@ -0,0 +1,353 @@
+package lock_free_hashtable;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Int-to-Object hash map with open addressing and linear probes.
+ * It uses the same lock-free algorithm as {@link IntIntHashMap}, but keys and values are kept in parallel
+ * {@link AtomicIntegerArray} and {@link AtomicReferenceArray}. Values that are being moved to the next core
+ * are marked by wrapping them into {@link Marked}.
+ *
+ * @param <V> type of values.
+ */
+public class IntObjectHashMap<V> {
+    private static final int MAGIC = 0x9E3779B9; // golden ratio
+    private static final int INITIAL_CAPACITY = 2; // capacity of the new map
+    private static final int MAX_PROBES = 8; // max number of probes to find an item
+    private static final int MAX_CAPACITY = 1 << 30; // max capacity that is chosen for expected size
+
+    private static final int NULL_KEY = 0; // missing key (initial value)
+    private static final Object NULL_VALUE = null; // missing value (initial value)
+    private static final Object DEL_VALUE = new Object(); // mark for removed value
+    private static final Object NEEDS_REHASH = new Object(); // returned by putInternal to indicate that rehash is needed
+    private static final Object LOOK_FOR_NEXT = new Object(); // returned by putInternal to indicate that needed lookup in other table
+    private static final Object MOVED_VALUE = new Object(); // value moved during rehashing to new table
+    private static final int TRANSFER_STRIDE = 16; // number of (key, value) pairs in a chunk claimed by rehash helper
+
+    // Checks is the value is a value that was put by user
+    private static boolean isValue(Object value) {
+        return value != NULL_VALUE && value != DEL_VALUE && value != MOVED_VALUE && !isMarkedValue(value);
+    }
+
+    // Converts internal value to the public results of the methods
+    @SuppressWarnings("unchecked")
+    private static <V> V toValue(Object value) {
+        return isValue(value) ? (V) value : null;
+    }
+
+    // Returns capacity that is enough to keep a given number of pairs without rehash
+    private static int capacityFor(int expectedSize) {
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < MAX_CAPACITY && capacity < 2 * (long) expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private final AtomicReference<Core> core;
+
+    /**
+     * Creates new empty map.
+     */
+    public IntObjectHashMap() {
+        core = new AtomicReference<>(new Core(INITIAL_CAPACITY));
+    }
+
+    /**
+     * Creates new empty map that can keep a given number of pairs without rehash.
+     *
+     * @param expectedSize expected number of pairs in the map.
+     * @throws IllegalArgumentException if expected size is negative.
+     */
+    public IntObjectHashMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Expected size must be non-negative: " + expectedSize);
+        }
+        core = new AtomicReference<>(new Core(capacityFor(expectedSize)));
+    }
+
+    /**
+     * Returns value for the corresponding key or null if this key is not present.
+     *
+     * @param key a positive key.
+     * @return value for the corresponding or null if this key is not present.
+     * @throws IllegalArgumentException if key is not positive.
+     */
+    public V get(int key) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Key must be positive: " + key);
+        }
+        return toValue(core.get().getInternal(key));
+    }
+
+    /**
+     * Changes value for the corresponding key and returns old value or null if key was not present.
+     *
+     * @param key   a positive key.
+     * @param value a non-null value.
+     * @return old value or null if this key was not present.
+     * @throws IllegalArgumentException if key is not positive or value is null.
+     */
+    public V put(int key, V value) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Key must be positive: " + key);
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("Value must not be null");
+        }
+        return toValue(putAndRehashWhileNeeded(key, value));
+    }
+
+    /**
+     * Removes value for the corresponding key and returns old value or null if key was not present.
+     *
+     * @param key a positive key.
+     * @return old value or null if this key was not present.
+     * @throws IllegalArgumentException if key is not positive.
+     */
+    public V remove(int key) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Key must be positive: " + key);
+        }
+        return toValue(putAndRehashWhileNeeded(key, DEL_VALUE));
+    }
+
+    private Object putAndRehashWhileNeeded(int key, Object value) {
+        while (true) {
+            Core curCore = core.get();
+            Object oldValue = curCore.putInternal(key, value, false);
+            if (oldValue == NEEDS_REHASH) {
+                core.compareAndSet(curCore, curCore.rehash());
+            } else if (oldValue == LOOK_FOR_NEXT) {
+                core.compareAndSet(curCore, curCore.next.get());
+            } else {
+                return oldValue;
+            }
+        }
+    }
+
+    static private boolean isMarkedValue(Object value) {
+        return value instanceof Marked;
+    }
+
+    static private Object getUnmarkedValue(Object value) {
+        return ((Marked) value).value;
+    }
+
+    static private Object getMarkedValue(Object value) {
+        return new Marked(value);
+    }
+
+    /**
+     * Wrapper for the value that is being moved to the next core.
+     */
+    private static final class Marked {
+        final Object value;
+
+        Marked(Object value) {
+            this.value = value;
+        }
+    }
+
+    private static class Core {
+        final AtomicIntegerArray keys;
+        final AtomicReferenceArray<Object> values; // value for the key with the same index
+        final int shift;
+        final AtomicReference<Core> next;
+        final int chunks; // number of chunks the map is split into for migration
+        final AtomicInteger transferIndex; // next chunk to be claimed by a helper
+        final AtomicIntegerArray movedChunks; // 1 for every chunk that was fully moved to next core
+        final AtomicInteger movedChunksCount;
+
+        /**
+         * Creates new core with a given capacity for (key, value) pair.
+         */
+        Core(int capacity) {
+            keys = new AtomicIntegerArray(capacity);
+            values = new AtomicReferenceArray<>(capacity);
+            int mask = capacity - 1;
+            assert mask > 0 && (mask & capacity) == 0 : "Capacity must be power of 2: " + capacity;
+            shift = 32 - Integer.bitCount(mask);
+            next = new AtomicReference<>();
+            chunks = (capacity + TRANSFER_STRIDE - 1) / TRANSFER_STRIDE;
+            transferIndex = new AtomicInteger();
+            movedChunks = new AtomicIntegerArray(chunks);
+            movedChunksCount = new AtomicInteger();
+        }
+
+        Object getInternal(int key) {
+            int index = index(key);
+            int probes = 0;
+            while (true) {
+                int curKey = keys.get(index);
+                Object curValue = values.get(index);
+                if (curValue == MOVED_VALUE) {
+                    helpRehash();
+                    return next.get().getInternal(key);
+                }
+                if (isMarkedValue(curValue)) {
+                    // marked value is frozen until the whole core is moved, so it is still actual
+                    if (curKey == key) {
+                        return getUnmarkedValue(curValue);
+                    }
+                    helpRehash();
+                    return next.get().getInternal(key);
+                }
+                if (curKey == NULL_KEY) {
+                    return NULL_VALUE;
+                }
+                if (curKey == key) {
+                    return curValue;
+                }
+                if (++probes >= MAX_PROBES) {
+                    return NULL_VALUE;
+                }
+                if (index == 0) {
+                    index = keys.length();
+                }
+                index--;
+            }
+        }
+
+        /**
+         * Helps to move this core to the next one and returns only when all chunks are moved.
+         *
+         * @see IntIntHashMap
+         */
+        private void helpRehash() {
+            while (movedChunksCount.get() < chunks) {
+                if (transferIndex.get() >= chunks) {
+                    for (int chunk = 0; chunk < chunks; chunk++) {
+                        if (movedChunks.get(chunk) == 0) {
+                            moveChunk(chunk);
+                        }
+                    }
+                    return;
+                }
+                int chunk = transferIndex.getAndIncrement();
+                if (chunk < chunks) {
+                    moveChunk(chunk);
+                }
+            }
+        }
+
+        private void moveChunk(int chunk) {
+            int end = Math.min(keys.length(), (chunk + 1) * TRANSFER_STRIDE);
+            for (int index = chunk * TRANSFER_STRIDE; index < end; index++) {
+                moveSlot(index);
+            }
+            if (movedChunks.compareAndSet(chunk, 0, 1)) {
+                movedChunksCount.incrementAndGet();
+            }
+        }
+
+        private void moveSlot(int index) {
+            while (true) {
+                int curKey = keys.get(index);
+                Object curValue = values.get(index);
+                if (curValue == MOVED_VALUE) {
+                    return;
+                }
+                if (curKey == NULL_KEY || curValue == NULL_VALUE || curValue == DEL_VALUE) {
+                    if (values.compareAndSet(index, curValue, MOVED_VALUE)) {
+                        return;
+                    }
+                    continue;
+                }
+                if (!isMarkedValue(curValue)) {
+                    Object markedValue = getMarkedValue(curValue);
+                    if (!values.compareAndSet(index, curValue, markedValue)) {
+                        continue;
+                    }
+                    curValue = markedValue;
+                }
+                Object curRealValue = getUnmarkedValue(curValue);
+                Core curRealNext = next.get();
+                boolean moved = false;
+                while (!moved) {
+                    Object result = curRealNext.putInternal(curKey, curRealValue, true);
+                    if (result == NEEDS_REHASH) {
+                        curRealNext = curRealNext.rehash();
+                    } else if (result == LOOK_FOR_NEXT) {
+                        curRealNext = curRealNext.next.get();
+                    } else {
+                        moved = true;
+                    }
+                }
+                values.compareAndSet(index, curValue, MOVED_VALUE);
+                return;
+            }
+        }
+
+        Object putInternal(int key, Object value, boolean once) {
+            int index = index(key);
+            int probes = 0;
+            int curKey = keys.get(index);
+            Object curValue = values.get(index);
+            for (; curKey != key; curKey = keys.get(index), curValue = values.get(index)) {
+                if (curValue == MOVED_VALUE || isMarkedValue(curValue)) {
+                    helpRehash();
+                    return LOOK_FOR_NEXT;
+                }
+                if (curKey == NULL_KEY) {
+                    if (keys.compareAndSet(index, NULL_KEY, key) || (keys.get(index) == key)) {
+                        break;
+                    } else {
+                        continue;
+                    }
+                }
+                if (++probes >= MAX_PROBES) {
+                    return NEEDS_REHASH;
+                }
+                if (index == 0) {
+                    index = keys.length();
+                }
+                index--;
+            }
+            while (true) {
+                if (curValue == MOVED_VALUE) {
+                    helpRehash();
+                    return LOOK_FOR_NEXT;
+                } else if (isMarkedValue(curValue)) {
+                    helpRehash();
+                    return once ? NULL_VALUE : LOOK_FOR_NEXT;
+                } else if (curValue == DEL_VALUE) {
+                    if (once || values.compareAndSet(index, DEL_VALUE, value)) {
+                        return NULL_VALUE;
+                    }
+                } else if (curValue == NULL_VALUE) {
+                    if (values.compareAndSet(index, NULL_VALUE, value)) {
+                        return NULL_VALUE;
+                    }
+                } else {
+                    if (once || values.compareAndSet(index, curValue, value)) {
+                        return curValue;
+                    }
+                }
+                curValue = values.get(index);
+            }
+        }
+
+        Core rehash() {
+            Core res = next.get();
+            if (res == null) {
+                res = new Core(2 * keys.length());
+                if (!next.compareAndSet(null, res)) {
+                    res = next.get();
+                }
+            }
+            helpRehash();
+            return res;
+        }
+
+        /**
+         * Returns an initial index in keys and values to look for a given key.
+         */
+        int index(int key) {
+            return (key * MAGIC) >>> shift;
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package lock_free_hashtable;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Long-to-Long hash map with open addressing and linear probes.
+ * It uses the same lock-free algorithm as {@link IntIntHashMap}, keys and values are kept in
+ * {@link AtomicLongArray} without boxing.
+ */
+public class LongLongHashMap {
+    private static final long MAGIC = 0x9E3779B97F4A7C15L; // golden ratio
+    private static final int INITIAL_CAPACITY = 2; // capacity of the new map
+    private static final int MAX_PROBES = 8; // max number of probes to find an item
+    private static final int MAX_CAPACITY = 1 << 29; // max capacity that is chosen for expected size
+
+    private static final long NULL_KEY = 0L; // missing key (initial value)
+    private static final long NULL_VALUE = 0L; // missing value (initial value)
+    private static final long DEL_VALUE = Long.MAX_VALUE; // mark for removed value
+    private static final long NEEDS_REHASH = -1L; // returned by putInternal to indicate that rehash is needed
+    private static final long LOOK_FOR_NEXT = -2L; // returned by putInternal to indicate that needed lookup in other table
+    private static final long MOVED_VALUE = Long.MIN_VALUE; // value moved during rehashing to new table
+    private static final int TRANSFER_STRIDE = 16; // number of (key, value) pairs in a chunk claimed by rehash helper
+
+    // Checks is the value is in the range of allowed values
+    private static boolean isValue(long value) {
+        return value > 0 && value < DEL_VALUE; // the range or allowed values
+    }
+
+    // Converts internal value to the public results of the methods
+    private static long toValue(long value) {
+        return isValue(value) ? value : 0;
+    }
+
+    // Returns capacity that is enough to keep a given number of pairs without rehash
+    private static int capacityFor(int expectedSize) {
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < MAX_CAPACITY && capacity < 2 * (long) expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private final AtomicReference<Core> core;
+
+    /**
+     * Creates new empty map.
+     */
+    public LongLongHashMap() {
+        core = new AtomicReference<>(new Core(INITIAL_CAPACITY));
+    }
+
+    /**
+     * Creates new empty map that can keep a given number of pairs without rehash.
+     *
+     * @param expectedSize expected number of pairs in the map.
+     * @throws IllegalArgumentException if expected size is negative.
+     */
+    public LongLongHashMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Expected size must be non-negative: " + expectedSize);
+        }
+        core = new AtomicReference<>(new Core(capacityFor(expectedSize)));
+    }
+
+    /**
+     * Returns value for the corresponding key or zero if this key is not present.
+     *
+     * @param key a positive key.
+     * @return value for the corresponding or zero if this key is not present.
+     * @throws IllegalArgumentException if key is not positive.
+     */
+    public long get(long key) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Key must be positive: " + key);
+        }
+        return toValue(core.get().getInternal(key));
+    }
+
+    /**
+     * Changes value for the corresponding key and returns old value or zero if key was not present.
+     *
+     * @param key   a positive key.
+     * @param value a positive value.
+     * @return old value or zero if this key was not present.
+     * @throws IllegalArgumentException if key or value are not positive, or value is equal to
+     *                                  {@link Long#MAX_VALUE} which is reserved.
+     */
+    public long put(long key, long value) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Key must be positive: " + key);
+        }
+        if (!isValue(value)) {
+            throw new IllegalArgumentException("Invalid value: " + value);
+        }
+        return toValue(putAndRehashWhileNeeded(key, value));
+    }
+
+    /**
+     * Removes value for the corresponding key and returns old value or zero if key was not present.
+     *
+     * @param key a positive key.
+     * @return old value or zero if this key was not present.
+     * @throws IllegalArgumentException if key is not positive.
+     */
+    public long remove(long key) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Key must be positive: " + key);
+        }
+        return toValue(putAndRehashWhileNeeded(key, DEL_VALUE));
+    }
+
+    /**
+     * Puts all pairs to the map, as if {@link #put(long, long)} was called for each pair in order.
+     * Pairs are loaded into a new core without CAS operations, and this core is published once as the next one
+     * for the current core. The current pairs are moved into it by regular rehash and do not override loaded ones.
+     * The batch is not atomic: readers keep using the current core until the slot of a key is moved, so a loaded
+     * pair takes effect at that moment during the call, and concurrent readers may see some pairs and not others.
+     *
+     * @param keys   positive keys.
+     * @param values positive values for the corresponding keys.
+     * @throws IllegalArgumentException if arrays have different lengths, any key or value are not positive,
+     *                                  or any value is equal to {@link Long#MAX_VALUE} which is reserved.
+     */
+    public void putAll(long[] keys, long[] values) {
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException("Keys and values must have the same length: " +
+                    keys.length + " != " + values.length);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] <= 0) {
+                throw new IllegalArgumentException("Key must be positive: " + keys[i]);
+            }
+            if (!isValue(values[i])) {
+                throw new IllegalArgumentException("Invalid value: " + values[i]);
+            }
+        }
+        if (keys.length == 0) {
+            return;
+        }
+        while (true) {
+            Core curCore = core.get();
+            if (curCore.next.get() != null) {
+                core.compareAndSet(curCore, curCore.rehash());
+                continue;
+            }
+            Core loaded = Core.load(keys, values, Math.max(capacityFor(keys.length), curCore.map.length() / 2));
+            if (curCore.next.compareAndSet(null, loaded)) {
+                core.compareAndSet(curCore, curCore.rehash());
+                return;
+            }
+        }
+    }
+
+    private long putAndRehashWhileNeeded(long key, long value) {
+        while (true) {
+            Core curCore = core.get();
+            long oldValue = curCore.putInternal(key, value, false);
+            if (oldValue == NEEDS_REHASH) {
+                core.compareAndSet(curCore, curCore.rehash());
+            } else if (oldValue == LOOK_FOR_NEXT) {
+                core.compareAndSet(curCore, curCore.next.get());
+            } else {
+                return oldValue;
+            }
+        }
+    }
+
+    static private boolean isMarkedValue(long value) {
+        return ((value & Long.MIN_VALUE) != 0);
+    }
+
+    static private long getUnmarkedValue(long value) {
+        return (value & (~Long.MIN_VALUE));
+    }
+
+    static private long getMarkedValue(long value) {
+        return (value | Long.MIN_VALUE);
+    }
+
+    private static class Core {
+        final AtomicLongArray map; // pairs of (key, value) here
+        final int shift;
+        final AtomicReference<Core> next;
+        final int chunks; // number of chunks the map is split into for migration
+        final AtomicInteger transferIndex; // next chunk to be claimed by a helper
+        final AtomicIntegerArray movedChunks; // 1 for every chunk that was fully moved to next core
+        final AtomicInteger movedChunksCount;
+
+        /**
+         * Creates new core with a given capacity for (key, value) pair.
+         * The actual size of the map is twice as big.
+         */
+        Core(int capacity) {
+            map = new AtomicLongArray(2 * capacity);
+            int mask = capacity - 1;
+            assert mask > 0 && (mask & capacity) == 0 : "Capacity must be power of 2: " + capacity;
+            shift = 64 - Integer.bitCount(mask);
+            next = new AtomicReference<>();
+            chunks = (capacity + TRANSFER_STRIDE - 1) / TRANSFER_STRIDE;
+            transferIndex = new AtomicInteger();
+            movedChunks = new AtomicIntegerArray(chunks);
+            movedChunksCount = new AtomicInteger();
+        }
+
+        /**
+         * Creates new core with all given pairs and at least a given capacity.
+         * The core is not published yet, so pairs are written without CAS.
+         */
+        static Core load(long[] keys, long[] values, int capacity) {
+            while (true) {
+                Core res = new Core(capacity);
+                if (res.putAllPrivate(keys, values)) {
+                    return res;
+                }
+                capacity *= 2;
+            }
+        }
+
+        private boolean putAllPrivate(long[] keys, long[] values) {
+            for (int i = 0; i < keys.length; i++) {
+                if (!putPrivate(keys[i], values[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean putPrivate(long key, long value) {
+            int index = index(key);
+            for (int probes = 0; probes < MAX_PROBES; probes++) {
+                long curKey = map.get(index);
+                if (curKey == NULL_KEY || curKey == key) {
+                    map.lazySet(index, key);
+                    map.lazySet(index + 1, value);
+                    return true;
+                }
+                if (index == 0) {
+                    index = map.length();
+                }
+                index -= 2;
+            }
+            return false;
+        }
+
+        long getInternal(long key) {
+            int index = index(key);
+            int probes = 0;
+            while (true) {
+                long curKey = map.get(index);
+                long curValue = map.get(index + 1);
+                if (curValue == MOVED_VALUE) {
+                    helpRehash();
+                    return next.get().getInternal(key);
+                }
+                if (isMarkedValue(curValue)) {
+                    // marked value is frozen until the whole core is moved, so it is still actual
+                    if (curKey == key) {
+                        return getUnmarkedValue(curValue);
+                    }
+                    helpRehash();
+                    return next.get().getInternal(key);
+                }
+                if (curKey == NULL_KEY) {
+                    return NULL_VALUE;
+                }
+                if (curKey == key) {
+                    return curValue;
+                }
+                if (++probes >= MAX_PROBES) {
+                    return NULL_VALUE;
+                }
+                if (index == 0) {
+                    index = map.length();
+                }
+                index -= 2;
+            }
+        }
+
+        /**
+         * Helps to move this core to the next one and returns only when all chunks are moved.
+         * Every helper claims its own chunks, so the work is not repeated while there are unclaimed chunks.
+         * When all chunks are claimed, the helper moves the chunks which are still in progress by itself,
+         * so the operation stays lock-free even if the claimers are stalled.
+         */
+        private void helpRehash() {
+            while (movedChunksCount.get() < chunks) {
+                if (transferIndex.get() >= chunks) {
+                    for (int chunk = 0; chunk < chunks; chunk++) {
+                        if (movedChunks.get(chunk) == 0) {
+                            moveChunk(chunk);
+                        }
+                    }
+                    return;
+                }
+                int chunk = transferIndex.getAndIncrement();
+                if (chunk < chunks) {
+                    moveChunk(chunk);
+                }
+            }
+        }
+
+        private void moveChunk(int chunk) {
+            int end = Math.min(map.length(), (chunk + 1) * 2 * TRANSFER_STRIDE);
+            for (int index = chunk * 2 * TRANSFER_STRIDE; index < end; index += 2) {
+                moveSlot(index);
+            }
+            if (movedChunks.compareAndSet(chunk, 0, 1)) {
+                movedChunksCount.incrementAndGet();
+            }
+        }
+
+        private void moveSlot(int index) {
+            while (true) {
+                long curKey = map.get(index);
+                long curValue = map.get(index + 1);
+                if (curValue == MOVED_VALUE) {
+                    return;
+                }
+                if (curKey == NULL_KEY || curValue == NULL_VALUE || curValue == DEL_VALUE) {
+                    if (map.compareAndSet(index + 1, curValue, MOVED_VALUE)) {
+                        return;
+                    }
+                    continue;
+                }
+                if (!isMarkedValue(curValue)) {
+                    if (!map.compareAndSet(index + 1, curValue, getMarkedValue(curValue))) {
+                        continue;
+                    }
+                    curValue = getMarkedValue(curValue);
+                }
+                long curRealValue = getUnmarkedValue(curValue);
+                Core curRealNext = next.get();
+                boolean moved = false;
+                while (!moved) {
+                    long result = curRealNext.putInternal(curKey, curRealValue, true);
+                    if (result == NEEDS_REHASH) {
+                        curRealNext = curRealNext.rehash();
+                    } else if (result == LOOK_FOR_NEXT) {
+                        curRealNext = curRealNext.next.get();
+                    } else {
+                        moved = true;
+                    }
+                }
+                map.compareAndSet(index + 1, curValue, MOVED_VALUE);
+                return;
+            }
+        }
+
+        long putInternal(long key, long value, boolean once) {
+            int index = index(key);
+            int probes = 0;
+            long curKey = map.get(index);
+            long curValue = map.get(index + 1);
+            for (; curKey != key; curKey = map.get(index), curValue = map.get(index + 1)) {
+                if (isMarkedValue(curValue)) {
+                    helpRehash();
+                    return LOOK_FOR_NEXT;
+                }
+                if (curKey == NULL_KEY) {
+                    if (map.compareAndSet(index, NULL_KEY, key) || (map.get(index) == key)) {
+                        break;
+                    } else {
+                        continue;
+                    }
+                }
+                if (++probes >= MAX_PROBES) {
+                    return NEEDS_REHASH;
+                }
+                if (index == 0) {
+                    index = map.length();
+                }
+                index -= 2;
+            }
+            while (true) {
+                if (curValue == MOVED_VALUE) {
+                    helpRehash();
+                    return LOOK_FOR_NEXT;
+                } else if (isMarkedValue(curValue)) {
+                    helpRehash();
+                    return once ? NULL_VALUE : LOOK_FOR_NEXT;
+                } else if (curValue == DEL_VALUE) {
+                    if (once || map.compareAndSet(index + 1, DEL_VALUE, value)) {
+                        return NULL_VALUE;
+                    }
+                } else if (curValue == NULL_VALUE) {
+                    if (map.compareAndSet(index + 1, NULL_VALUE, value)) {
+                        return NULL_VALUE;
+                    }
+                } else {
+                    if (once || map.compareAndSet(index + 1, curValue, value)) {
+                        return curValue;
+                    }
+                }
+                curValue = map.get(index + 1);
+            }
+
+        }
+
+        Core rehash() {
+            Core res = next.get();
+            if (res == null) {
+                res = new Core(map.length());
+                if (!next.compareAndSet(null, res)) {
+                    res = next.get();
+                }
+            }
+            helpRehash();
+            return res;
+        }
+
+        /**
+         * Returns an initial index in map to look for a given key.
+         */
+        int index(long key) {
+            return (int) ((key * MAGIC) >>> shift) * 2;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,155 @@
+package lock_free_hashtable;
+
+import sun.misc.Unsafe;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Array of ints in the direct memory or in a memory-mapped file with the same atomic operations as
+ * {@link java.util.concurrent.atomic.AtomicIntegerArray}.
+ * The memory is split into segments, so that the array is not limited by the max size of {@link ByteBuffer}.
+ * The memory is released by GC together with the array, or by {@link #free()} if the array was never shared.
+ */
+class OffHeapIntArray {
+    private static final Unsafe UNSAFE = getUnsafe();
+    private static final long ADDRESS_OFFSET = addressOffset();
+    private static final Method INVOKE_CLEANER = getInvokeCleaner();
+    private static final int SEGMENT_SHIFT = 28; // 2^28 ints or 1 GB in a segment
+    private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+
+    private static Unsafe getUnsafe() {
+        try {
+            Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return (Unsafe) field.get(null);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // Unsafe.invokeCleaner(ByteBuffer) since Java 9, or null before it
+    private static Method getInvokeCleaner() {
+        try {
+            return Unsafe.class.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static long addressOffset() {
+        try {
+            return UNSAFE.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+        } catch (NoSuchFieldException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final int length;
+    private final ByteBuffer[] segments; // keep buffers reachable while memory is used
+    private final long[] addresses;
+
+    private OffHeapIntArray(int length, ByteBuffer[] segments) {
+        this.length = length;
+        this.segments = segments;
+        addresses = new long[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            addresses[i] = UNSAFE.getLong(segments[i], ADDRESS_OFFSET);
+        }
+    }
+
+    private static int segmentsCount(int length) {
+        return (int) (((long) length + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+    }
+
+    private static int segmentLength(int length, int segment) {
+        return Math.min(SEGMENT_MASK + 1, length - (segment << SEGMENT_SHIFT));
+    }
+
+    /**
+     * Creates new array of zeros in the direct memory.
+     */
+    static OffHeapIntArray allocate(int length) {
+        ByteBuffer[] segments = new ByteBuffer[segmentsCount(length)];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = ByteBuffer.allocateDirect(4 * segmentLength(length, i));
+        }
+        return new OffHeapIntArray(length, segments);
+    }
+
+    /**
+     * Maps the file into memory as an array of a given length. The file is extended with zeros if it is shorter.
+     */
+    static OffHeapIntArray map(File file, int length) throws IOException {
+        ByteBuffer[] segments = new ByteBuffer[segmentsCount(length)];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() < 4L * length) {
+                raf.setLength(4L * length);
+            }
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = raf.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                        4L * (i << SEGMENT_SHIFT), 4 * segmentLength(length, i));
+            }
+        }
+        return new OffHeapIntArray(length, segments);
+    }
+
+    /**
+     * Writes changes of the memory-mapped array to the file.
+     */
+    void force() {
+        for (ByteBuffer segment : segments) {
+            if (segment instanceof MappedByteBuffer) {
+                ((MappedByteBuffer) segment).force();
+            }
+        }
+    }
+
+    /**
+     * Releases the memory of the array right away, the array must not be used after that.
+     * If the buffers cannot be cleaned on this JVM, the memory is released by GC as usual.
+     */
+    void free() {
+        for (ByteBuffer segment : segments) {
+            try {
+                if (INVOKE_CLEANER != null) {
+                    INVOKE_CLEANER.invoke(UNSAFE, segment);
+                } else {
+                    Method cleanerMethod = segment.getClass().getMethod("cleaner");
+                    cleanerMethod.setAccessible(true);
+                    Object cleaner = cleanerMethod.invoke(segment);
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return; // memory is released by GC
+            }
+        }
+    }
+
+    private long address(int i) {
+        return addresses[i >>> SEGMENT_SHIFT] + 4L * (i & SEGMENT_MASK);
+    }
+
+    int length() {
+        return length;
+    }
+
+    int get(int i) {
+        return UNSAFE.getIntVolatile(null, address(i));
+    }
+
+    void lazySet(int i, int value) {
+        UNSAFE.putOrderedInt(null, address(i), value);
+    }
+
+    boolean compareAndSet(int i, int expect, int update) {
+        return UNSAFE.compareAndSwapInt(null, address(i), expect, update);
+    }
+}
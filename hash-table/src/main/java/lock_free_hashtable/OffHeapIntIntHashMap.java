@@ -0,0 +1,533 @@
+package lock_free_hashtable;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Int-to-Int hash map with open addressing and linear probes that keeps pairs outside of the heap.
+ * It uses the same lock-free algorithm as {@link IntIntHashMap}, but every core keeps its pairs in
+ * {@link OffHeapIntArray}, either in the direct memory or in a memory-mapped file.
+ *
+ * <p>When the map is backed by a file, every core is kept in its own file {@code <file>.<generation>},
+ * and the file itself keeps the generation of the current core and whether the map was closed.
+ * It is written when the current core is replaced and by {@link #close()}, so the map can be opened again
+ * without rebuilding it. The map that was not closed can be opened too, unless it was stopped during rehash.
+ */
+public class OffHeapIntIntHashMap implements Closeable {
+    private static final int MAGIC = 0x9E3779B9; // golden ratio
+    private static final int INITIAL_CAPACITY = 2; // capacity of the new map
+    private static final int MAX_PROBES = 8; // max number of probes to find an item
+    private static final int MAX_CAPACITY = 1 << 29; // max capacity, the core of 2^30 ints takes 4 GB
+
+    private static final int NULL_KEY = 0; // missing key (initial value)
+    private static final int NULL_VALUE = 0; // missing value (initial value)
+    private static final int DEL_VALUE = Integer.MAX_VALUE; // mark for removed value
+    private static final int NEEDS_REHASH = -1; // returned by putInternal to indicate that rehash is needed
+    private static final int LOOK_FOR_NEXT = -2; // returned by putInternal to indicate that needed lookup in other table
+    private static final int MOVED_VALUE = Integer.MIN_VALUE; // value moved during rehashing to new table
+    private static final int TRANSFER_STRIDE = 16; // number of (key, value) pairs in a chunk claimed by rehash helper
+
+    // Checks is the value is in the range of allowed values
+    private static boolean isValue(int value) {
+        return value > 0 && value < DEL_VALUE; // the range or allowed values
+    }
+
+    // Converts internal value to the public results of the methods
+    private static int toValue(int value) {
+        return isValue(value) ? value : 0;
+    }
+
+    // Returns capacity that is enough to keep a given number of pairs without rehash
+    private static int capacityFor(int expectedSize) {
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < MAX_CAPACITY && capacity < 2 * (long) expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private final Storage storage;
+    private final AtomicReference<Core> core;
+
+    /**
+     * Creates new empty map in the direct memory that can keep a given number of pairs without rehash.
+     *
+     * @param expectedSize expected number of pairs in the map.
+     * @throws IllegalArgumentException if expected size is negative.
+     */
+    public OffHeapIntIntHashMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Expected size must be non-negative: " + expectedSize);
+        }
+        storage = new Storage(null, 0);
+        core = new AtomicReference<>(new Core(capacityFor(expectedSize), storage));
+    }
+
+    /**
+     * Opens the map that was closed in a given file, or creates new empty map in this file
+     * that can keep a given number of pairs without rehash.
+     *
+     * @param file         file that keeps the map.
+     * @param expectedSize expected number of pairs in the new map.
+     * @throws IllegalArgumentException if expected size is negative.
+     * @throws IOException              if the map cannot be read or created.
+     */
+    public OffHeapIntIntHashMap(File file, int expectedSize) throws IOException {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Expected size must be non-negative: " + expectedSize);
+        }
+        if (file.exists()) {
+            long generation;
+            boolean closed;
+            try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+                generation = in.readLong();
+                closed = in.readBoolean();
+            }
+            storage = new Storage(file, generation);
+            Core curCore = new Core(storage.open(generation), generation, storage);
+            if (!closed && curCore.isMigrating()) {
+                throw new IOException("The map in " + file + " was not closed during rehash and cannot be opened");
+            }
+            core = new AtomicReference<>(curCore);
+        } else {
+            storage = new Storage(file, 0);
+            core = new AtomicReference<>(new Core(capacityFor(expectedSize), storage));
+        }
+        storage.commit(core.get().generation, false);
+    }
+
+    /**
+     * Returns value for the corresponding key or zero if this key is not present.
+     *
+     * @param key a positive key.
+     * @return value for the corresponding or zero if this key is not present.
+     * @throws IllegalArgumentException if key is not positive.
+     */
+    public int get(int key) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Key must be positive: " + key);
+        }
+        return toValue(core.get().getInternal(key));
+    }
+
+    /**
+     * Changes value for the corresponding key and returns old value or zero if key was not present.
+     *
+     * @param key   a positive key.
+     * @param value a positive value.
+     * @return old value or zero if this key was not present.
+     * @throws IllegalArgumentException if key or value are not positive, or value is equal to
+     *                                  {@link Integer#MAX_VALUE} which is reserved.
+     * @throws UncheckedIOException     if the file for the next core cannot be created.
+     * @throws IllegalStateException    if the map needs to grow above the max capacity of 2^29 pairs.
+     */
+    public int put(int key, int value) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Key must be positive: " + key);
+        }
+        if (!isValue(value)) {
+            throw new IllegalArgumentException("Invalid value: " + value);
+        }
+        return toValue(putAndRehashWhileNeeded(key, value));
+    }
+
+    /**
+     * Removes value for the corresponding key and returns old value or zero if key was not present.
+     *
+     * @param key a positive key.
+     * @return old value or zero if this key was not present.
+     * @throws IllegalArgumentException if key is not positive.
+     * @throws UncheckedIOException     if the file for the next core cannot be created.
+     * @throws IllegalStateException    if the map needs to grow above the max capacity of 2^29 pairs.
+     */
+    public int remove(int key) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Key must be positive: " + key);
+        }
+        return toValue(putAndRehashWhileNeeded(key, DEL_VALUE));
+    }
+
+    /**
+     * Completes rehash in progress and, if the map is backed by a file, writes the current core to its file
+     * and its generation to the map file. The map must not be used concurrently with or after this method.
+     *
+     * @throws IOException if the map file cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        Core curCore = core.get();
+        while (curCore.next.get() != null) {
+            switchCore(curCore, curCore.rehash());
+            curCore = core.get();
+        }
+        if (storage.file != null) {
+            curCore.map.force();
+            storage.write(curCore.generation, true);
+        }
+    }
+
+    private int putAndRehashWhileNeeded(int key, int value) {
+        while (true) {
+            Core curCore = core.get();
+            int oldValue = curCore.putInternal(key, value, false);
+            if (oldValue == NEEDS_REHASH) {
+                switchCore(curCore, curCore.rehash());
+            } else if (oldValue == LOOK_FOR_NEXT) {
+                switchCore(curCore, curCore.next.get());
+            } else {
+                return oldValue;
+            }
+        }
+    }
+
+    // Replaces the current core with the next one, the file of the replaced core is not needed anymore
+    // once the map file refers to the next one
+    private void switchCore(Core curCore, Core nextCore) {
+        if (core.compareAndSet(curCore, nextCore)) {
+            storage.commit(nextCore.generation, false);
+            storage.release(curCore.generation);
+        }
+    }
+
+    static private boolean isMarkedValue(int value) {
+        return ((value & Integer.MIN_VALUE) != 0);
+    }
+
+    static private int getUnmarkedValue(int value) {
+        return (value & (~Integer.MIN_VALUE));
+    }
+
+    static private int getMarkedValue(int value) {
+        return (value | Integer.MIN_VALUE);
+    }
+
+    /**
+     * Allocates memory for cores either in the direct memory, or in the files named by generations of cores.
+     */
+    private static class Storage {
+        final File file; // null if cores are kept in the direct memory
+        final AtomicLong lastGeneration;
+        long committedGeneration; // the generation in the map file, guarded by this storage
+
+        Storage(File file, long lastGeneration) {
+            this.file = file;
+            this.lastGeneration = new AtomicLong(lastGeneration);
+        }
+
+        File coreFile(long generation) {
+            return new File(file.getPath() + "." + generation);
+        }
+
+        OffHeapIntArray allocate(int length, long generation) {
+            if (file == null) {
+                return OffHeapIntArray.allocate(length);
+            }
+            File coreFile = coreFile(generation);
+            try {
+                Files.deleteIfExists(coreFile.toPath()); // left by the process that was not closed
+                return OffHeapIntArray.map(coreFile, length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        OffHeapIntArray open(long generation) throws IOException {
+            File coreFile = coreFile(generation);
+            long length = coreFile.length() / 4;
+            // the core keeps 2 * capacity ints, and capacity is a power of 2
+            if (length < 2 * INITIAL_CAPACITY || length > 2 * MAX_CAPACITY || Long.bitCount(length) != 1) {
+                throw new IOException("The file " + coreFile + " of the current core is missing or corrupted");
+            }
+            return OffHeapIntArray.map(coreFile, (int) length);
+        }
+
+        /**
+         * Writes a given generation of the current core to the map file, unless a later one is already written,
+         * so the file is not replaced by a concurrent rehash after it.
+         *
+         * @throws UncheckedIOException if the map file cannot be written.
+         */
+        synchronized void commit(long generation, boolean closed) {
+            if (file == null || generation < committedGeneration) {
+                return;
+            }
+            try {
+                write(generation, closed);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        synchronized void write(long generation, boolean closed) throws IOException {
+            File tmp = new File(file.getPath() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp))) {
+                out.writeLong(generation);
+                out.writeBoolean(closed);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committedGeneration = generation;
+        }
+
+        /**
+         * Deletes the file of the core that was replaced. The memory stays mapped while the core is used.
+         */
+        void release(long generation) {
+            if (file != null && !coreFile(generation).delete()) {
+                coreFile(generation).deleteOnExit();
+            }
+        }
+    }
+
+    private static class Core {
+        final OffHeapIntArray map; // pairs of (key, value) here
+        final long generation;
+        final Storage storage;
+        final int shift;
+        final AtomicReference<Core> next;
+        final int chunks; // number of chunks the map is split into for migration
+        final AtomicInteger transferIndex; // next chunk to be claimed by a helper
+        final AtomicIntegerArray movedChunks; // 1 for every chunk that was fully moved to next core
+        final AtomicInteger movedChunksCount;
+
+        /**
+         * Creates new core with a given capacity for (key, value) pair and allocates memory for it.
+         */
+        Core(int capacity, Storage storage) {
+            this(capacity, storage.lastGeneration.incrementAndGet(), storage);
+        }
+
+        private Core(int capacity, long generation, Storage storage) {
+            this(storage.allocate(2 * capacity, generation), generation, storage);
+        }
+
+        /**
+         * Creates new core with a given memory for (key, value) pairs.
+         * The actual size of the memory is twice as big as the capacity.
+         */
+        Core(OffHeapIntArray map, long generation, Storage storage) {
+            this.map = map;
+            this.generation = generation;
+            this.storage = storage;
+            int capacity = map.length() / 2;
+            int mask = capacity - 1;
+            assert mask > 0 && (mask & capacity) == 0 : "Capacity must be power of 2: " + capacity;
+            shift = 32 - Integer.bitCount(mask);
+            next = new AtomicReference<>();
+            chunks = (capacity + TRANSFER_STRIDE - 1) / TRANSFER_STRIDE;
+            transferIndex = new AtomicInteger();
+            movedChunks = new AtomicIntegerArray(chunks);
+            movedChunksCount = new AtomicInteger();
+        }
+
+        int getInternal(int key) {
+            int index = index(key);
+            int probes = 0;
+            while (true) {
+                int curKey = map.get(index);
+                int curValue = map.get(index + 1);
+                if (curValue == MOVED_VALUE) {
+                    helpRehash();
+                    return next.get().getInternal(key);
+                }
+                if (isMarkedValue(curValue)) {
+                    // marked value is frozen until the whole core is moved, so it is still actual
+                    if (curKey == key) {
+                        return getUnmarkedValue(curValue);
+                    }
+                    helpRehash();
+                    return next.get().getInternal(key);
+                }
+                if (curKey == NULL_KEY) {
+                    return NULL_VALUE;
+                }
+                if (curKey == key) {
+                    return curValue;
+                }
+                if (++probes >= MAX_PROBES) {
+                    return NULL_VALUE;
+                }
+                if (index == 0) {
+                    index = map.length();
+                }
+                index -= 2;
+            }
+        }
+
+        /**
+         * Helps to move this core to the next one and returns only when all chunks are moved.
+         *
+         * @see IntIntHashMap
+         */
+        private void helpRehash() {
+            while (movedChunksCount.get() < chunks) {
+                if (transferIndex.get() >= chunks) {
+                    for (int chunk = 0; chunk < chunks; chunk++) {
+                        if (movedChunks.get(chunk) == 0) {
+                            moveChunk(chunk);
+                        }
+                    }
+                    return;
+                }
+                int chunk = transferIndex.getAndIncrement();
+                if (chunk < chunks) {
+                    moveChunk(chunk);
+                }
+            }
+        }
+
+        private void moveChunk(int chunk) {
+            int end = Math.min(map.length(), (chunk + 1) * 2 * TRANSFER_STRIDE);
+            for (int index = chunk * 2 * TRANSFER_STRIDE; index < end; index += 2) {
+                moveSlot(index);
+            }
+            if (movedChunks.compareAndSet(chunk, 0, 1)) {
+                movedChunksCount.incrementAndGet();
+            }
+        }
+
+        private void moveSlot(int index) {
+            while (true) {
+                int curKey = map.get(index);
+                int curValue = map.get(index + 1);
+                if (curValue == MOVED_VALUE) {
+                    return;
+                }
+                if (curKey == NULL_KEY || curValue == NULL_VALUE || curValue == DEL_VALUE) {
+                    if (map.compareAndSet(index + 1, curValue, MOVED_VALUE)) {
+                        return;
+                    }
+                    continue;
+                }
+                if (!isMarkedValue(curValue)) {
+                    if (!map.compareAndSet(index + 1, curValue, getMarkedValue(curValue))) {
+                        continue;
+                    }
+                    curValue = getMarkedValue(curValue);
+                }
+                int curRealValue = getUnmarkedValue(curValue);
+                Core curRealNext = next.get();
+                boolean moved = false;
+                while (!moved) {
+                    switch (curRealNext.putInternal(curKey, curRealValue, true)) {
+                        case NEEDS_REHASH: {
+                            curRealNext = curRealNext.rehash();
+                            break;
+                        }
+                        case LOOK_FOR_NEXT: {
+                            curRealNext = curRealNext.next.get();
+                            break;
+                        }
+                        default: {
+                            moved = true;
+                            break;
+                        }
+                    }
+                }
+                map.compareAndSet(index + 1, curValue, MOVED_VALUE);
+                return;
+            }
+        }
+
+        int putInternal(int key, int value, boolean once) {
+            int index = index(key);
+            int probes = 0;
+            int curKey = map.get(index);
+            int curValue = map.get(index + 1);
+            for (; curKey != key; curKey = map.get(index), curValue = map.get(index + 1)) {
+                if (isMarkedValue(curValue)) {
+                    helpRehash();
+                    return LOOK_FOR_NEXT;
+                }
+                if (curKey == NULL_KEY) {
+                    if (map.compareAndSet(index, NULL_KEY, key) || (map.get(index) == key)) {
+                        break;
+                    } else {
+                        continue;
+                    }
+                }
+                if (++probes >= MAX_PROBES) {
+                    return NEEDS_REHASH;
+                }
+                if (index == 0) {
+                    index = map.length();
+                }
+                index -= 2;
+            }
+            while (true) {
+                if (curValue == MOVED_VALUE) {
+                    helpRehash();
+                    return LOOK_FOR_NEXT;
+                } else if (isMarkedValue(curValue)) {
+                    helpRehash();
+                    return once ? NULL_VALUE : LOOK_FOR_NEXT;
+                } else if (curValue == DEL_VALUE) {
+                    if (once || map.compareAndSet(index + 1, DEL_VALUE, value)) {
+                        return NULL_VALUE;
+                    }
+                } else if (curValue == NULL_VALUE) {
+                    if (map.compareAndSet(index + 1, NULL_VALUE, value)) {
+                        return NULL_VALUE;
+                    }
+                } else {
+                    if (once || map.compareAndSet(index + 1, curValue, value)) {
+                        return curValue;
+                    }
+                }
+                curValue = map.get(index + 1);
+            }
+        }
+
+        /**
+         * Returns true if the core has marked values, which are left when the map is stopped during rehash.
+         */
+        boolean isMigrating() {
+            for (int index = 0; index < map.length(); index += 2) {
+                if (isMarkedValue(map.get(index + 1))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @throws IllegalStateException if the capacity of this core is the max one.
+         */
+        Core rehash() {
+            Core res = next.get();
+            if (res == null) {
+                int capacity = map.length() / 2;
+                if (capacity >= MAX_CAPACITY) {
+                    throw new IllegalStateException("Map cannot grow above the max capacity: " + capacity);
+                }
+                res = new Core(2 * capacity, storage);
+                if (!next.compareAndSet(null, res)) {
+                    // the losing core was never shared, so its memory and file are released right away
+                    res.map.free();
+                    storage.release(res.generation);
+                    res = next.get();
+                }
+            }
+            helpRehash();
+            return res;
+        }
+
+        /**
+         * Returns an initial index in map to look for a given key.
+         */
+        int index(int key) {
+            return ((key * MAGIC) >>> shift) * 2;
+        }
+    }
+}
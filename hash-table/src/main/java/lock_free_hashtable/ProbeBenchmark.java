@@ -0,0 +1,100 @@
+package lock_free_hashtable;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of gets in {@link IntIntHashMap} with different hash functions for structured key sets.
+ * The map is grown from the empty one by puts of the keys, and the load factor it ends up with
+ * and the distribution of probes of gets are printed after the trial.
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+public class ProbeBenchmark {
+    private static final int KEYS = 1 << 16; // number of keys in the map
+
+    public enum Keys {
+        /**
+         * 1, 2, 3, ...
+         */
+        SEQUENTIAL,
+        /**
+         * Multiples of 2^14, like ids with a shard number in low bits of the first shard.
+         */
+        STRIDED,
+        /**
+         * 64 runs of sequential keys which start at multiples of 2^24.
+         */
+        CLUSTERED
+    }
+
+    @State(Scope.Benchmark)
+    public static class MapState {
+        @Param({"GOLDEN_RATIO", "MURMUR3", "RANDOM_SEED"})
+        public IntIntHashMap.Hash hash = IntIntHashMap.Hash.GOLDEN_RATIO;
+
+        @Param({"SEQUENTIAL", "STRIDED", "CLUSTERED"})
+        public Keys keys = Keys.SEQUENTIAL;
+
+        IntIntHashMap map;
+        final int[] keySet = new int[KEYS];
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            for (int i = 0; i < KEYS; i++) {
+                keySet[i] = keyOf(i);
+            }
+            map = new IntIntHashMap(0, IntIntHashMap.Layout.LINEAR_PROBING, hash);
+            for (int key : keySet) {
+                map.put(key, key);
+            }
+        }
+
+        private int keyOf(int i) {
+            switch (keys) {
+                case SEQUENTIAL:
+                    return i + 1;
+                case STRIDED:
+                    return (i + 1) << 14;
+                case CLUSTERED:
+                    return ((i & 63) << 24) + (i >> 6) + 1;
+                default:
+                    throw new AssertionError("Unknown keys: " + keys);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            System.out.println();
+            System.out.println(hash + " " + keys + ": capacity " + map.capacity() +
+                    ", load factor " + map.loadFactor() + ", probes " + Arrays.toString(map.probeHistogram()));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        int index;
+    }
+
+    @Benchmark
+    public int get(MapState mapState, ThreadState threadState) {
+        return mapState.map.get(mapState.keySet[threadState.index++ & (KEYS - 1)]);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(ProbeBenchmark.class.getSimpleName())
+                .forks(1)
+                .build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,49 @@
+package lock_free_hashtable;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures latency distribution (p99 and others) of put operations while the map keeps growing,
+ * so that every sample may hit a rehash. Run it on different revisions to compare rehash strategies.
+ */
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.SampleTime)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RehashBenchmark {
+    @Param({"LINEAR_PROBING", "CACHE_LINE_BUCKETS"})
+    public IntIntHashMap.Layout layout = IntIntHashMap.Layout.LINEAR_PROBING;
+
+    private IntIntHashMap map;
+    private final AtomicInteger nextKey = new AtomicInteger();
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        map = new IntIntHashMap(0, layout);
+        nextKey.set(0);
+    }
+
+    @Benchmark
+    public int putGrowing() {
+        int key = nextKey.incrementAndGet();
+        return map.put(key, key);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(RehashBenchmark.class.getSimpleName())
+                .forks(1)
+                .threads(4) // CHANGE ME!
+                .build();
+        new Runner(opt).run();
+    }
+}
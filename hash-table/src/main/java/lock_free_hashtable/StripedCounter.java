@@ -0,0 +1,38 @@
+package lock_free_hashtable;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Scalable counter that keeps a separate cell for a group of threads.
+ * Cells are placed on different cache lines, so concurrent updates from different threads do not contend.
+ */
+class StripedCounter {
+    private static final int PADDING = 8; // number of longs in a cache line
+    private static final int MAX_STRIPES = 64;
+    private static final int STRIPES = Math.min(MAX_STRIPES,
+            Integer.highestOneBit(Runtime.getRuntime().availableProcessors()) * 2);
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    /**
+     * Adds delta to the cell of the current thread and returns new value of this cell.
+     */
+    long add(long delta) {
+        return cells.addAndGet(index(), delta);
+    }
+
+    /**
+     * Returns sum of all cells. The result is exact only when there are no concurrent updates.
+     */
+    long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    private static int index() {
+        return ((int) Thread.currentThread().getId() & (STRIPES - 1)) * PADDING;
+    }
+}
@@ -0,0 +1,123 @@
+package lock_free_hashtable;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class BoundedIntIntHashMapTest {
+
+    private static final int N = 1_000_000;
+    private static final int MAX_KEY = 100;
+    private static final int MAX_VALUE = 500;
+    private static final Random RAND = new Random(0);
+
+    @Test
+    public void test() {
+        // the map is large enough to keep all keys without eviction
+        BoundedIntIntHashMap map = new BoundedIntIntHashMap(1 << 12);
+        Map<Integer, Integer> expectedMap = new HashMap<>();
+        for (int i = 0; i < N; i++) {
+            int key = RAND.nextInt(MAX_KEY) + 1;
+            int val = RAND.nextInt(MAX_VALUE) + 1;
+            if (RAND.nextBoolean()) {
+                Integer expected = expectedMap.put(key, val);
+                if (expected == null)
+                    expected = 0;
+                assertEquals((int) expected, map.put(key, val));
+            } else {
+                Integer expected = expectedMap.remove(key);
+                if (expected == null)
+                    expected = 0;
+                assertEquals((int) expected, map.remove(key));
+            }
+            int checkKey = RAND.nextInt(MAX_KEY) + 1;
+            Integer expected = expectedMap.get(checkKey);
+            if (expected == null)
+                expected = 0;
+            assertEquals((int) expected, map.get(checkKey));
+        }
+        assertThat(map.evictionCount(), is(0L));
+        assertThat(map.hitCount() + map.missCount(), is((long) N));
+    }
+
+    @Test
+    public void testEviction() {
+        BoundedIntIntHashMap map = new BoundedIntIntHashMap(100);
+        assertThat(map.capacity(), is(128));
+        int n = 10_000;
+        for (int i = 1; i <= n; i++) {
+            assertThat(map.put(i, i * 2), is(0));
+            assertThat(map.get(i), is(i * 2));
+        }
+        int present = 0;
+        for (int i = 1; i <= n; i++) {
+            int value = map.get(i);
+            if (value != 0) {
+                assertThat(value, is(i * 2));
+                present++;
+            }
+        }
+        assertTrue(present <= map.capacity());
+        assertThat(map.evictionCount(), is((long) (n - present)));
+        assertThat(map.hitCount(), is((long) (n + present)));
+        assertThat(map.missCount(), is((long) (n - present)));
+    }
+
+    @Test
+    public void testReferencedPairsStay() {
+        BoundedIntIntHashMap map = new BoundedIntIntHashMap(8); // a single window
+        for (int i = 1; i <= 8; i++) {
+            map.put(i, i);
+        }
+        // keep key 1 in use while new keys evict others
+        for (int i = 9; i <= 100; i++) {
+            assertThat(map.get(1), is(1));
+            map.put(i, i);
+        }
+        assertThat(map.get(1), is(1));
+        assertThat(map.get(100), is(100));
+    }
+
+    @Test
+    public void testConcurrentPutsOfSameKeys() throws InterruptedException {
+        int keys = 4;
+        int threads = 4;
+        for (int round = 0; round < 100; round++) {
+            BoundedIntIntHashMap map = new BoundedIntIntHashMap(8); // a single window
+            Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                int seed = round * threads + t;
+                workers[t] = new Thread(() -> {
+                    Random rand = new Random(seed);
+                    for (int i = 0; i < 10_000; i++) {
+                        int key = rand.nextInt(keys) + 1;
+                        map.put(key, key * 1000 + rand.nextInt(999) + 1);
+                        int value = map.get(key);
+                        assertTrue(value == 0 || value / 1000 == key); // the pair may be evicted by a duplicate
+                    }
+                });
+                workers[t].start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            // no duplicate pairs are left, so new keys fill the rest of the window without eviction
+            long evictions = map.evictionCount();
+            for (int key = keys + 1; key <= 2 * keys; key++) {
+                assertThat(map.put(key, key), is(0));
+            }
+            assertThat(map.evictionCount(), is(evictions));
+            for (int key = 1; key <= keys; key++) {
+                map.remove(key);
+                assertThat(map.get(key), is(0));
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package lock_free_hashtable;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class IntHashSetTest {
+
+    private static final int N = 1_000_000;
+    private static final int MAX_KEY = 100;
+    private static final Random RAND = new Random(0);
+
+    private IntHashSet set = new IntHashSet();
+
+    @Test
+    public void test() {
+        Set<Integer> expectedSet = new HashSet<>();
+        for (int i = 0; i < N; i++) {
+            int key = RAND.nextInt(MAX_KEY) + 1;
+            if (RAND.nextBoolean()) {
+                assertEquals(expectedSet.add(key), set.add(key));
+            } else {
+                assertEquals(expectedSet.remove(key), set.remove(key));
+            }
+            for (key = 1; key <= MAX_KEY; key++) {
+                assertEquals(expectedSet.contains(key), set.contains(key));
+            }
+        }
+        assertThat(set.size(), is(expectedSet.size()));
+    }
+
+    @Test
+    public void testRehash() {
+        int n = 1000;
+        // add & check all
+        for (int i = 1; i <= n; i++) {
+            assertThat(set.contains(i), is(false));
+            assertThat(set.add(i), is(true));
+            assertThat(set.contains(i), is(true));
+        }
+        // check all again
+        for (int i = 1; i <= n; i++) {
+            assertThat(set.contains(i), is(true));
+            assertThat(set.add(i), is(false));
+        }
+        // remove all
+        for (int i = 1; i <= n; i++) {
+            assertThat(set.remove(i), is(true));
+            assertThat(set.contains(i), is(false));
+            assertThat(set.remove(i), is(false));
+        }
+        assertThat(set.size(), is(0));
+    }
+
+    @Test
+    public void testLargeKeys() {
+        int n = 1000;
+        // keys that take all 31 bits
+        for (int i = 0; i < n; i++) {
+            assertThat(set.add(Integer.MAX_VALUE - i), is(true));
+            assertThat(set.add((1 << 30) + i), is(true));
+        }
+        for (int i = 0; i < n; i++) {
+            assertThat(set.contains(Integer.MAX_VALUE - i), is(true));
+            assertThat(set.contains((1 << 30) + i), is(true));
+            assertThat(set.contains(i + 1), is(false));
+        }
+        for (int i = 0; i < n; i++) {
+            assertThat(set.remove(Integer.MAX_VALUE - i), is(true));
+            assertThat(set.contains(Integer.MAX_VALUE - i), is(false));
+        }
+        assertThat(set.size(), is(n));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidKey() {
+        set.add(0);
+    }
+}
@@ -27,6 +27,16 @@ public class IntIntHashMapConcurrentTest {
         return map.remove(key);
     }
 
+    @Operation(params = {"key", "value"})
+    public Integer putIfAbsent(Integer key, Integer value) {
+        return map.putIfAbsent(key, value);
+    }
+
+    @Operation(params = {"key", "value"})
+    public Integer addAndGet(Integer key, Integer value) {
+        return map.addAndGet(key, value);
+    }
+
     @Operation(params = "key")
     public Integer get(Integer key) {
         return map.get(key);
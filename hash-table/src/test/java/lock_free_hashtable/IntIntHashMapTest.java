@@ -7,6 +7,7 @@ import java.util.Map;
 import java.util.Random;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 
@@ -73,6 +74,227 @@ public class IntIntHashMapTest {
         }
     }
 
+    @Test
+    public void testExpectedSize() {
+        int n = 1000;
+        map = new IntIntHashMap(n);
+        for (int i = 1; i <= n; i++) {
+            assertThat(map.put(i, valOf(i)), is(0));
+        }
+        for (int i = 1; i <= n; i++) {
+            assertThat(map.get(i), is(valOf(i)));
+        }
+    }
+
+    @Test
+    public void testPutAll() {
+        int n = 1000;
+        for (int i = 1; i <= n; i += 2) {
+            map.put(i, i);
+        }
+        int[] keys = new int[n];
+        int[] values = new int[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = 2 * i + 1;
+            values[i] = valOf(2 * i + 1);
+        }
+        map.putAll(keys, values);
+        for (int i = 1; i <= 2 * n; i++) {
+            assertThat(map.get(i), is(i % 2 == 1 ? valOf(i) : 0));
+        }
+        for (int i = 1; i <= 2 * n; i += 2) {
+            assertThat(map.remove(i), is(valOf(i)));
+        }
+    }
+
+    @Test
+    public void testBatch() {
+        int n = 1000;
+        for (int i = 1; i <= n; i += 2) {
+            map.put(i, i);
+        }
+        int[] keys = new int[n];
+        int[] values = new int[n];
+        int[] out = new int[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = i + 1;
+            values[i] = valOf(i + 1);
+        }
+        map.putEach(keys, values, out);
+        for (int i = 0; i < n; i++) {
+            assertThat(out[i], is(keys[i] % 2 == 1 ? keys[i] : 0));
+        }
+        keys = new int[]{1, 2, n, n + 1, 2, 1};
+        out = new int[keys.length];
+        map.getAll(keys, out);
+        assertArrayEquals(new int[]{valOf(1), valOf(2), valOf(n), 0, valOf(2), valOf(1)}, out);
+        // the batch with repeated keys is put in order
+        out = new int[3];
+        map.putEach(new int[]{n + 1, n + 1, 1}, new int[]{1, 2, 3}, out);
+        assertArrayEquals(new int[]{0, 1, valOf(1)}, out);
+        assertThat(map.get(n + 1), is(2));
+    }
+
+    @Test
+    public void testAtomicOperations() {
+        assertThat(map.putIfAbsent(1, 10), is(0));
+        assertThat(map.putIfAbsent(1, 20), is(10));
+        assertThat(map.replace(1, 20, 30), is(false));
+        assertThat(map.replace(1, 10, 30), is(true));
+        assertThat(map.replace(2, 10, 30), is(false));
+        assertThat(map.get(2), is(0));
+        assertThat(map.addAndGet(1, 5), is(35));
+        assertThat(map.addAndGet(2, 5), is(5));
+        assertThat(map.addAndGet(2, -5), is(0));
+        assertThat(map.get(2), is(0));
+        assertThat(map.computeIfPresent(1, v -> v * 2), is(70));
+        assertThat(map.computeIfPresent(2, v -> v * 2), is(0));
+        assertThat(map.computeIfPresent(1, v -> 0), is(0));
+        assertThat(map.get(1), is(0));
+    }
+
+    @Test
+    public void testReplaceMissingKeyInFullCore() {
+        map = new IntIntHashMap(4); // capacity of 8 pairs, all of them are reached by probes
+        for (int i = 1; i <= 8; i++) {
+            map.put(i, i);
+        }
+        assertThat(map.capacity(), is(8));
+        assertThat(map.replace(100, 1, 2), is(false));
+        assertThat(map.computeIfPresent(100, v -> v + 1), is(0));
+        assertThat(map.capacity(), is(8));
+    }
+
+    @Test
+    public void testAddAndGetRehash() {
+        int n = 1000;
+        for (int k = 0; k < 3; k++) {
+            for (int i = 1; i <= n; i++) {
+                assertThat(map.addAndGet(i, i), is((k + 1) * i));
+            }
+        }
+        for (int i = 1; i <= n; i++) {
+            assertThat(map.get(i), is(3 * i));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAddAndGetUnderflow() {
+        map.addAndGet(1, -1);
+    }
+
+    @Test
+    public void testChurn() {
+        int n = 100_000;
+        int live = 100;
+        for (int i = 1; i <= n; i++) {
+            assertThat(map.put(i, valOf(i % 1000 + 1)), is(0));
+            if (i > live) {
+                assertThat(map.remove(i - live), is(valOf((i - live) % 1000 + 1)));
+            }
+        }
+        for (int i = 1; i <= n; i++) {
+            assertThat(map.get(i), is(i > n - live ? valOf(i % 1000 + 1) : 0));
+        }
+    }
+
+    @Test
+    public void testForEach() {
+        int n = 1000;
+        for (int i = 1; i <= n; i++) {
+            map.put(i, valOf(i));
+        }
+        for (int i = 1; i <= n; i += 2) {
+            map.remove(i);
+        }
+        Map<Integer, Integer> actualMap = new HashMap<>();
+        map.forEach((key, value) -> assertThat(actualMap.put(key, value), is((Integer) null)));
+        assertThat(actualMap.size(), is(n / 2));
+        for (int i = 2; i <= n; i += 2) {
+            assertThat(actualMap.get(i), is(valOf(i)));
+        }
+    }
+
+    @Test
+    public void testSnapshotTo() {
+        int n = 1000;
+        for (int i = 1; i <= n; i++) {
+            map.put(i, valOf(i));
+        }
+        int[] keys = new int[n];
+        int[] values = new int[n];
+        assertThat(map.snapshotTo(keys, values), is(n));
+        for (int i = 0; i < n; i++) {
+            assertThat(values[i], is(valOf(keys[i])));
+        }
+        assertThat(map.snapshotTo(new int[10], new int[10]), is(n));
+    }
+
+    @Test
+    public void testSize() {
+        int n = 1000;
+        for (int i = 1; i <= n; i++) {
+            map.put(i, valOf(i));
+            map.put(i, valOf(i) + 1);
+        }
+        assertThat(map.size(), is(n));
+        for (int i = 1; i <= n; i += 2) {
+            map.remove(i);
+            map.remove(i);
+        }
+        assertThat(map.size(), is(n / 2));
+        map.putAll(new int[]{1, 2, 3}, new int[]{1, 2, 3});
+        assertThat(map.size(), is(n / 2 + 2));
+        map.addAndGet(5, 1);
+        map.addAndGet(2, -2);
+        assertThat(map.size(), is(n / 2 + 2));
+        assertThat(map.migratingCores(), is(0));
+    }
+
+    @Test
+    public void testShrink() {
+        int n = 100_000;
+        for (int i = 1; i <= n; i++) {
+            map.put(i, valOf(i % 1000 + 1));
+        }
+        int fullCapacity = map.capacity();
+        for (int i = 1; i <= n - 100; i++) {
+            map.remove(i);
+        }
+        assertThat(map.size(), is(100));
+        assertThat(map.capacity() < fullCapacity / 8, is(true));
+        assertThat(map.tombstoneCount() <= map.capacity(), is(true));
+        long ops = 0;
+        for (long count : map.probeHistogram()) {
+            ops += count;
+        }
+        assertThat(ops > 0, is(true));
+    }
+
+    @Test
+    public void testCacheLineBuckets() {
+        map = new IntIntHashMap(0, IntIntHashMap.Layout.CACHE_LINE_BUCKETS);
+        testRehash();
+        test();
+    }
+
+    @Test
+    public void testHash() {
+        for (IntIntHashMap.Hash hash : IntIntHashMap.Hash.values()) {
+            map = new IntIntHashMap(0, IntIntHashMap.Layout.LINEAR_PROBING, hash);
+            testRehash();
+            // keys that differ only in high bits
+            int n = 1000;
+            for (int i = 1; i <= n; i++) {
+                assertThat(map.put(i << 20, valOf(i)), is(0));
+            }
+            for (int i = 1; i <= n; i++) {
+                assertThat(map.get(i << 20), is(valOf(i)));
+                assertThat(map.remove(i << 20), is(valOf(i)));
+            }
+        }
+    }
+
     private int valOf(int i) {
         return i * i;
     }
@@ -0,0 +1,117 @@
+package lock_free_hashtable;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class IntIntMultiMapTest {
+
+    private static final int N = 1_000_000;
+    private static final int MAX_KEY = 10;
+    private static final int MAX_VALUE = 10;
+    private static final Random RAND = new Random(0);
+
+    private IntIntMultiMap map = new IntIntMultiMap();
+
+    @Test
+    public void test() {
+        Set<Long> expectedSet = new HashSet<>();
+        for (int i = 0; i < N; i++) {
+            int key = RAND.nextInt(MAX_KEY) + 1;
+            int val = RAND.nextInt(MAX_VALUE) + 1;
+            if (RAND.nextBoolean()) {
+                assertEquals(expectedSet.add(pairOf(key, val)), map.add(key, val));
+            } else {
+                assertEquals(expectedSet.remove(pairOf(key, val)), map.remove(key, val));
+            }
+            for (key = 1; key <= MAX_KEY; key++) {
+                Set<Integer> expectedValues = new HashSet<>();
+                for (val = 1; val <= MAX_VALUE; val++) {
+                    assertEquals(expectedSet.contains(pairOf(key, val)), map.contains(key, val));
+                    if (expectedSet.contains(pairOf(key, val))) {
+                        expectedValues.add(val);
+                    }
+                }
+                assertEquals(expectedValues, valuesOf(key));
+            }
+        }
+        assertThat(map.size(), is(expectedSet.size()));
+    }
+
+    @Test
+    public void testManyValues() {
+        int n = 1000;
+        // add many values for a few keys, including the extreme ones
+        for (int i = 1; i <= n; i++) {
+            assertThat(map.add(1, i), is(true));
+            assertThat(map.add(Integer.MAX_VALUE, Integer.MAX_VALUE - i), is(true));
+        }
+        for (int i = 1; i <= n; i++) {
+            assertThat(map.contains(1, i), is(true));
+            assertThat(map.contains(Integer.MAX_VALUE, Integer.MAX_VALUE - i), is(true));
+            assertThat(map.contains(2, i), is(false));
+        }
+        assertThat(map.size(), is(2 * n));
+        assertThat(map.values(1).length, is(n));
+        assertThat(map.values(Integer.MAX_VALUE).length, is(n));
+        assertThat(map.values(2).length, is(0));
+        // remove all
+        for (int i = 1; i <= n; i++) {
+            assertThat(map.remove(1, i), is(true));
+            assertThat(map.remove(1, i), is(false));
+            assertThat(map.contains(1, i), is(false));
+        }
+        assertThat(map.size(), is(n));
+        assertThat(map.values(1).length, is(0));
+    }
+
+    @Test
+    public void testManyKeysWithManyValues() {
+        int n = 100;
+        for (int key = 1; key <= n; key++) {
+            for (int val = 1; val <= n; val++) {
+                assertThat(map.add(key, val), is(true));
+            }
+        }
+        assertThat(map.size(), is(n * n));
+        for (int key = 1; key <= n; key++) {
+            assertThat(map.values(key).length, is(n));
+            assertThat(map.remove(key, key), is(true));
+            assertThat(map.values(key).length, is(n - 1));
+        }
+    }
+
+    @Test
+    public void testRemovedPairStaysRemovedAfterRehash() {
+        int n = 100;
+        assertThat(map.add(1, 1), is(true));
+        assertThat(map.remove(1, 1), is(true));
+        // the first batch moves the removed pair to the next core, the second one moves it again
+        for (int batch = 0; batch < 2; batch++) {
+            for (int i = 1; i <= n; i++) {
+                assertThat(map.add(batch * n + i + 1, i), is(true));
+            }
+            assertThat(map.values(1).length, is(0));
+            assertThat(map.contains(1, 1), is(false));
+        }
+        assertThat(map.size(), is(2 * n));
+    }
+
+    private Set<Integer> valuesOf(int key) {
+        Set<Integer> values = new HashSet<>();
+        for (int val : map.values(key)) {
+            assertThat(values.add(val), is(true));
+        }
+        return values;
+    }
+
+    private static long pairOf(int key, int value) {
+        return ((long) key << 32) | value;
+    }
+}
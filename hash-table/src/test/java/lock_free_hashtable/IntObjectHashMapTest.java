@@ -0,0 +1,62 @@
+package lock_free_hashtable;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class IntObjectHashMapTest {
+
+    private static final int N = 1_000_000;
+    private static final int MAX_KEY = 100;
+    private static final int MAX_VALUE = 500;
+    private static final Random RAND = new Random(0);
+
+    private IntObjectHashMap<String> map = new IntObjectHashMap<>();
+
+    @Test
+    public void test() {
+        Map<Integer, String> expectedMap = new HashMap<>();
+        for (int i = 0; i < N; i++) {
+            int key = RAND.nextInt(MAX_KEY) + 1;
+            String val = String.valueOf(RAND.nextInt(MAX_VALUE));
+            if (RAND.nextBoolean()) {
+                assertEquals(expectedMap.put(key, val), map.put(key, val));
+            } else {
+                assertEquals(expectedMap.remove(key), map.remove(key));
+            }
+            for (key = 1; key <= MAX_KEY; key++) {
+                assertEquals(expectedMap.get(key), map.get(key));
+            }
+        }
+    }
+
+    @Test
+    public void testRehash() {
+        int n = 1000;
+        // put & check all
+        for (int i = 1; i <= n; i++) {
+            assertThat(map.get(i), is((String) null));
+            assertThat(map.put(i, valOf(i)), is((String) null));
+            assertThat(map.get(i), is(valOf(i)));
+        }
+        // check all again
+        for (int i = 1; i <= n; i++) {
+            assertThat(map.get(i), is(valOf(i)));
+        }
+        // remove all
+        for (int i = 1; i <= n; i++) {
+            assertThat(map.remove(i), is(valOf(i)));
+            assertThat(map.get(i), is((String) null));
+        }
+    }
+
+    private String valOf(int i) {
+        return "value" + i;
+    }
+}
@@ -0,0 +1,92 @@
+package lock_free_hashtable;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class LongLongHashMapTest {
+
+    private static final int N = 1_000_000;
+    private static final int MAX_KEY = 100;
+    private static final int MAX_VALUE = 500;
+    private static final long BIG = 1L << 40; // keys and values beyond the int range
+    private static final Random RAND = new Random(0);
+
+    private LongLongHashMap map = new LongLongHashMap();
+
+    @Test
+    public void test() {
+        Map<Long, Long> expectedMap = new HashMap<>();
+        for (int i = 0; i < N; i++) {
+            long key = BIG + RAND.nextInt(MAX_KEY);
+            long val = BIG + RAND.nextInt(MAX_VALUE);
+            if (RAND.nextBoolean()) {
+                Long expected = expectedMap.put(key, val);
+                if (expected == null)
+                    expected = 0L;
+                assertEquals((long) expected, map.put(key, val));
+            } else {
+                Long expected = expectedMap.remove(key);
+                if (expected == null)
+                    expected = 0L;
+                assertEquals((long) expected, map.remove(key));
+            }
+            for (key = BIG; key < BIG + MAX_KEY; key++) {
+                Long expected = expectedMap.get(key);
+                if (expected == null)
+                    expected = 0L;
+                assertEquals((long) expected, map.get(key));
+            }
+        }
+    }
+
+    @Test
+    public void testRehash() {
+        int n = 1000;
+        // put & check all
+        for (int i = 1; i <= n; i++) {
+            assertThat(map.get(keyOf(i)), is(0L));
+            assertThat(map.put(keyOf(i), valOf(i)), is(0L));
+            assertThat(map.get(keyOf(i)), is(valOf(i)));
+        }
+        // check all again
+        for (int i = 1; i <= n; i++) {
+            assertThat(map.get(keyOf(i)), is(valOf(i)));
+        }
+        // remove all
+        for (int i = 1; i <= n; i++) {
+            assertThat(map.remove(keyOf(i)), is(valOf(i)));
+            assertThat(map.get(keyOf(i)), is(0L));
+        }
+    }
+
+    @Test
+    public void testPutAll() {
+        int n = 1000;
+        long[] keys = new long[n];
+        long[] values = new long[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = keyOf(i + 1);
+            values[i] = valOf(i + 1);
+        }
+        map.put(keyOf(1), 1);
+        map.putAll(keys, values);
+        for (int i = 1; i <= n; i++) {
+            assertThat(map.get(keyOf(i)), is(valOf(i)));
+        }
+    }
+
+    private long keyOf(int i) {
+        return i * BIG;
+    }
+
+    private long valOf(int i) {
+        return (long) i * i * BIG;
+    }
+}
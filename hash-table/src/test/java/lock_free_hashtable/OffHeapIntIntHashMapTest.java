@@ -0,0 +1,116 @@
+package lock_free_hashtable;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class OffHeapIntIntHashMapTest {
+
+    private static final int N = 100_000;
+    private static final int MAX_KEY = 100;
+    private static final int MAX_VALUE = 500;
+    private static final Random RAND = new Random(0);
+
+    @Test
+    public void test() {
+        OffHeapIntIntHashMap map = new OffHeapIntIntHashMap(0);
+        Map<Integer, Integer> expectedMap = new HashMap<>();
+        for (int i = 0; i < N; i++) {
+            int key = RAND.nextInt(MAX_KEY) + 1;
+            int val = RAND.nextInt(MAX_VALUE) + 1;
+            if (RAND.nextBoolean()) {
+                Integer expected = expectedMap.put(key, val);
+                if (expected == null)
+                    expected = 0;
+                assertEquals((int) expected, map.put(key, val));
+            } else {
+                Integer expected = expectedMap.remove(key);
+                if (expected == null)
+                    expected = 0;
+                assertEquals((int) expected, map.remove(key));
+            }
+            for (key = 1; key <= MAX_KEY; key++) {
+                Integer expected = expectedMap.get(key);
+                if (expected == null)
+                    expected = 0;
+                assertEquals((int) expected, map.get(key));
+            }
+        }
+    }
+
+    @Test
+    public void testRehash() {
+        OffHeapIntIntHashMap map = new OffHeapIntIntHashMap(0);
+        int n = 1000;
+        for (int i = 1; i <= n; i++) {
+            assertThat(map.get(i), is(0));
+            assertThat(map.put(i, i * 2), is(0));
+            assertThat(map.get(i), is(i * 2));
+        }
+        for (int i = 1; i <= n; i++) {
+            assertThat(map.get(i), is(i * 2));
+        }
+    }
+
+    @Test
+    public void testReopen() throws IOException {
+        File dir = Files.createTempDirectory("map").toFile();
+        File file = new File(dir, "map");
+        int n = 1000;
+        try (OffHeapIntIntHashMap map = new OffHeapIntIntHashMap(file, 0)) {
+            for (int i = 1; i <= n; i++) {
+                assertThat(map.put(i, i * 2), is(0));
+            }
+            for (int i = 1; i <= n; i += 2) {
+                assertThat(map.remove(i), is(i * 2));
+            }
+        }
+        try (OffHeapIntIntHashMap map = new OffHeapIntIntHashMap(file, 0)) {
+            for (int i = 1; i <= n; i++) {
+                assertThat(map.get(i), is(i % 2 == 0 ? i * 2 : 0));
+            }
+            for (int i = n + 1; i <= 2 * n; i++) {
+                assertThat(map.put(i, i * 2), is(0));
+            }
+        }
+        try (OffHeapIntIntHashMap map = new OffHeapIntIntHashMap(file, 0)) {
+            for (int i = n + 1; i <= 2 * n; i++) {
+                assertThat(map.get(i), is(i * 2));
+            }
+            assertThat(map.get(2), is(4));
+        }
+        // only the map file and the file of the last core are kept
+        assertThat(dir.list().length, is(2));
+    }
+
+    @Test
+    public void testReopenNotClosed() throws IOException {
+        File dir = Files.createTempDirectory("map").toFile();
+        File file = new File(dir, "map");
+        int n = 1000;
+        try (OffHeapIntIntHashMap map = new OffHeapIntIntHashMap(file, 0)) {
+            for (int i = 1; i <= n; i++) {
+                assertThat(map.put(i, i * 2), is(0));
+            }
+        }
+        // the map is not closed, but its cores are replaced by rehash
+        OffHeapIntIntHashMap notClosed = new OffHeapIntIntHashMap(file, 0);
+        for (int i = n + 1; i <= 4 * n; i++) {
+            assertThat(notClosed.put(i, i * 2), is(0));
+        }
+        try (OffHeapIntIntHashMap map = new OffHeapIntIntHashMap(file, 0)) {
+            for (int i = 1; i <= 4 * n; i++) {
+                assertThat(map.get(i), is(i * 2));
+            }
+        }
+    }
+}
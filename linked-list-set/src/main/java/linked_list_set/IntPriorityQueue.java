@@ -0,0 +1,39 @@
+package linked_list_set;
+
+/**
+ * Priority queue of distinct ints, the least element has the highest priority.
+ */
+public interface IntPriorityQueue {
+
+    /**
+     * Adds the specified element to this queue if it is not already present.
+     *
+     * @param x element to be added to this queue
+     * @return <tt>true</tt> if this queue did not already contain the specified element
+     */
+    boolean add(int x);
+
+    /**
+     * Returns the least element of this queue without removing it.
+     *
+     * @return the least element, or <tt>Integer.MAX_VALUE</tt>, which bounds this queue, if it is empty
+     */
+    int peekFirst();
+
+    /**
+     * Removes the least element of this queue and returns it.
+     *
+     * @return the removed element, or <tt>Integer.MAX_VALUE</tt>, which bounds this queue, if it is empty
+     */
+    int pollFirst();
+
+    /**
+     * Removes one of <tt>k</tt> least elements of this queue, chosen at random, and returns it.
+     * Concurrent calls remove different elements near the head instead of contending for the least one,
+     * so the order is relaxed in exchange for scalability. With <tt>k = 1</tt> it is {@link #pollFirst()}.
+     *
+     * @param k the number of least elements to choose from
+     * @return the removed element, or <tt>Integer.MAX_VALUE</tt>, which bounds this queue, if it is empty
+     */
+    int pollFirstRelaxed(int k);
+}
@@ -0,0 +1,58 @@
+package linked_list_set;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link IntPriorityQueue#pollFirstRelaxed(int)} against {@link IntPriorityQueue#pollFirst()}
+ * in {@link SkipListSetImpl}, {@code k = 1} is the strict order. Every operation removes an element
+ * and adds a random one, so the size of the queue stays stable.
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+public class PriorityQueueBenchmark {
+    private static final int SIZE = 100000;
+
+    @State(Scope.Benchmark)
+    public static class QueueState {
+        @Param({"1", "32"})
+        public int k = 1;
+
+        IntPriorityQueue queue;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            queue = new SkipListSetImpl();
+            for (int i = 0; i < SIZE; i++) {
+                queue.add(ThreadLocalRandom.current().nextInt());
+            }
+        }
+    }
+
+    @Benchmark
+    public int pollAndAdd(QueueState state) {
+        int x = (state.k == 1) ? state.queue.pollFirst() : state.queue.pollFirstRelaxed(state.k);
+        state.queue.add(ThreadLocalRandom.current().nextInt());
+        return x;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 4, 32}) {
+            Options opt = new OptionsBuilder()
+                    .include(PriorityQueueBenchmark.class.getSimpleName())
+                    .forks(1)
+                    .threads(threads)
+                    .build();
+            new Runner(opt).run();
+        }
+    }
+}
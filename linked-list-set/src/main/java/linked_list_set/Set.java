@@ -1,5 +1,7 @@
 package linked_list_set;
 
+import java.util.function.IntConsumer;
+
 /**
  * Stack interface.
  *
@@ -33,4 +35,48 @@ public interface Set {
      * @return <tt>true</tt> if this set contains the specified element
      */
     boolean contains(int x);
+
+    /**
+     * Performs the action for each element of this set from <tt>lo</tt> to <tt>hi</tt> inclusive
+     * in ascending order. Iteration is weakly consistent: every element is passed at most once,
+     * every element that is present during the whole iteration is passed, and elements that
+     * are added or removed concurrently may be passed or not.
+     *
+     * @param lo     the lowest element to be passed
+     * @param hi     the highest element to be passed
+     * @param action action to perform for each element
+     */
+    void forEachInRange(int lo, int hi, IntConsumer action);
+
+    /**
+     * Returns the number of elements of this set from <tt>lo</tt> to <tt>hi</tt> inclusive.
+     * The result is weakly consistent in the same way as {@link #forEachInRange(int, int, IntConsumer)}.
+     *
+     * @param lo the lowest element to be counted
+     * @param hi the highest element to be counted
+     * @return the number of elements in the range
+     */
+    int countInRange(int lo, int hi);
+
+    /**
+     * Returns the least element of this set greater than or equal to the given one.
+     * The result was present in this set during the call, and no element between
+     * <tt>x</tt> and the result was present during the whole call.
+     *
+     * @param x the element to look for
+     * @return the least element greater than or equal to <tt>x</tt>, or
+     * <tt>Integer.MAX_VALUE</tt>, which bounds this set, if there is no such element
+     */
+    int ceiling(int x);
+
+    /**
+     * Returns the greatest element of this set less than or equal to the given one.
+     * The result was present in this set during the call, and no element between
+     * the result and <tt>x</tt> was present during the whole call.
+     *
+     * @param x the element to look for
+     * @return the greatest element less than or equal to <tt>x</tt>, or
+     * <tt>Integer.MIN_VALUE</tt>, which bounds this set, if there is no such element
+     */
+    int floor(int x);
 }
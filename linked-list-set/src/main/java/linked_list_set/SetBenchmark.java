@@ -0,0 +1,109 @@
+package linked_list_set;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link SkipListSetImpl} and {@link UnrolledSetImpl} against {@link SetImpl} for sets of different sizes.
+ * The set keeps even numbers from the key space that is twice as large as the set,
+ * 90% of operations are contains, and the rest add and remove odd numbers equally often, so the size stays stable.
+ * The {@code sequentialAdd} benchmarks add increasing ids to a set of every thread with and without
+ * {@link SetImpl.Cursor}, the set grows during the iteration.
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+public class SetBenchmark {
+
+    public enum Impl {
+        SET_IMPL,
+        SKIP_LIST,
+        UNROLLED
+    }
+
+    @State(Scope.Benchmark)
+    public static class SetState {
+        @Param({"SET_IMPL", "SKIP_LIST", "UNROLLED"})
+        public Impl impl = Impl.SKIP_LIST;
+
+        @Param({"1000", "100000", "10000000"})
+        public int size = 1000;
+
+        Set set;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            switch (impl) {
+                case SET_IMPL:
+                    set = new SetImpl();
+                    break;
+                case SKIP_LIST:
+                    set = new SkipListSetImpl();
+                    break;
+                default:
+                    set = new UnrolledSetImpl();
+            }
+            // descending order makes every add to SetImpl and UnrolledSetImpl take constant time
+            for (int i = size - 1; i >= 0; i--) {
+                set.add(2 * i);
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean operation(SetState state) {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        int x = r.nextInt(2 * state.size);
+        int op = r.nextInt(20);
+        if (op < 18) {
+            return state.set.contains(x);
+        } else if (op == 18) {
+            return state.set.add(x | 1);
+        } else {
+            return state.set.remove(x | 1);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SequentialState {
+        SetImpl set;
+        SetImpl.Cursor cursor;
+        int next;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            set = new SetImpl();
+            cursor = set.cursor();
+            next = 0;
+        }
+    }
+
+    @Benchmark
+    public boolean sequentialAdd(SequentialState state) {
+        return state.set.add(state.next++);
+    }
+
+    @Benchmark
+    public boolean sequentialAddWithCursor(SequentialState state) {
+        return state.cursor.add(state.next++);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 4}) {
+            Options opt = new OptionsBuilder()
+                    .include(SetBenchmark.class.getSimpleName())
+                    .forks(1)
+                    .threads(threads)
+                    .build();
+            new Runner(opt).run();
+        }
+    }
+}
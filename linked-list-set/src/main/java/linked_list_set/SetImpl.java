@@ -1,6 +1,7 @@
 package linked_list_set;
 
 import java.util.concurrent.atomic.AtomicMarkableReference;
+import java.util.function.IntConsumer;
 
 public class SetImpl implements Set {
     private class Node {
@@ -26,14 +27,65 @@ public class SetImpl implements Set {
             new Node(Integer.MAX_VALUE, null, false), false);
 
     /**
-     * Returns the {@link Window}, where cur.x < x <= next.x
+     * Search hint for a single thread. Operations through the cursor resume the search from the window
+     * of the previous operation when the target is greater, so a sequential access pattern takes
+     * constant time per operation. The search starts from the head when the target is not greater
+     * or the node of the previous window is removed.
      */
-    private Window findWindow(int x) {
+    public class Cursor {
+        private Node finger = head; // cur of the last window
+
+        private Cursor() {
+        }
+
+        /**
+         * Returns the node to start the search for x from, which is not removed and is less than x.
+         */
+        private Node start(int x) {
+            Node f = finger;
+            return (f.x < x && !f.next.isMarked()) ? f : head;
+        }
+
+        /**
+         * @see Set#add(int)
+         */
+        public boolean add(int x) {
+            return SetImpl.this.add(x, this);
+        }
+
+        /**
+         * @see Set#remove(int)
+         */
+        public boolean remove(int x) {
+            return SetImpl.this.remove(x, this);
+        }
+
+        /**
+         * @see Set#contains(int)
+         */
+        public boolean contains(int x) {
+            return SetImpl.this.contains(x, this);
+        }
+    }
+
+    /**
+     * Returns new cursor to be used by a single thread.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Returns the {@link Window}, where cur.x < x <= next.x, searching from a given node,
+     * which must be less than x and not removed when the search starts.
+     */
+    private Window findWindow(Node start, int x) {
         boolean[] nextMarkHolder = new boolean[1];
         while (true) {
             inner:
             {
-                Node cur = head;
+                Node cur = start;
+                start = head; // the start node can be removed after the first attempt
                 Node next = cur.next.getReference();
                 while (next.x < x) {
                     Node nextNext = next.next.get(nextMarkHolder);
@@ -60,8 +112,17 @@ public class SetImpl implements Set {
 
     @Override
     public boolean add(int x) {
+        return add(x, null);
+    }
+
+    private boolean add(int x, Cursor cursor) {
+        Node start = (cursor == null) ? head : cursor.start(x);
         while (true) {
-            Window w = findWindow(x);
+            Window w = findWindow(start, x);
+            start = head;
+            if (cursor != null) {
+                cursor.finger = w.cur;
+            }
             if (w.next.x == x) {
                 return false;
             }
@@ -74,8 +135,17 @@ public class SetImpl implements Set {
 
     @Override
     public boolean remove(int x) {
+        return remove(x, null);
+    }
+
+    private boolean remove(int x, Cursor cursor) {
+        Node start = (cursor == null) ? head : cursor.start(x);
         while (true) {
-            Window w = findWindow(x);
+            Window w = findWindow(start, x);
+            start = head;
+            if (cursor != null) {
+                cursor.finger = w.cur;
+            }
             if (w.next.x != x) {
                 return false;
             } else {
@@ -88,9 +158,102 @@ public class SetImpl implements Set {
         }
     }
 
+    /**
+     * Wait-free: only follows references and skips marked nodes without unlinking them,
+     * so it never writes shared memory, never retries and allocates nothing.
+     * The number of steps is bounded, as every step goes to a node with a greater key.
+     */
     @Override
     public boolean contains(int x) {
-        Window w = findWindow(x);
-        return w.next.x == x;
+        return contains(x, null);
+    }
+
+    private boolean contains(int x, Cursor cursor) {
+        Node pred = (cursor == null) ? head : cursor.start(x);
+        Node cur = pred.next.getReference();
+        while (cur.x < x) {
+            pred = cur;
+            cur = cur.next.getReference();
+        }
+        if (cursor != null) {
+            cursor.finger = pred;
+        }
+        return cur.x == x && !cur.next.isMarked();
+    }
+
+    /**
+     * Returns the first node with the key greater than or equal to x, which can be marked.
+     * Like {@link #contains(int)}, it only follows references.
+     */
+    private Node findFirst(int x) {
+        Node cur = head.next.getReference();
+        while (cur.x < x) {
+            cur = cur.next.getReference();
+        }
+        return cur;
+    }
+
+    @Override
+    public void forEachInRange(int lo, int hi, IntConsumer action) {
+        if (lo > hi) {
+            return;
+        }
+        Node cur = findFirst(lo);
+        while (cur.x <= hi) {
+            Node next = cur.next.getReference();
+            if (next == null) {
+                return; // the tail
+            }
+            if (!cur.next.isMarked()) {
+                action.accept(cur.x);
+            }
+            cur = next;
+        }
+    }
+
+    @Override
+    public int countInRange(int lo, int hi) {
+        if (lo > hi) {
+            return 0;
+        }
+        int count = 0;
+        Node cur = findFirst(lo);
+        while (cur.x <= hi) {
+            Node next = cur.next.getReference();
+            if (next == null) {
+                break; // the tail
+            }
+            if (!cur.next.isMarked()) {
+                count++;
+            }
+            cur = next;
+        }
+        return count;
+    }
+
+    @Override
+    public int ceiling(int x) {
+        Node cur = findFirst(x);
+        while (cur.next.isMarked()) {
+            cur = cur.next.getReference();
+        }
+        return cur.x;
+    }
+
+    @Override
+    public int floor(int x) {
+        int res = Integer.MIN_VALUE;
+        Node cur = head.next.getReference();
+        while (cur.x <= x) {
+            Node next = cur.next.getReference();
+            if (next == null) {
+                break; // the tail
+            }
+            if (!cur.next.isMarked()) {
+                res = cur.x;
+            }
+            cur = next;
+        }
+        return res;
     }
 }
\ No newline at end of file
@@ -0,0 +1,347 @@
+package linked_list_set;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicMarkableReference;
+import java.util.function.IntConsumer;
+
+/**
+ * Lock-free skip list set. Every level is a sorted list with logical deletion, as in {@link SetImpl}:
+ * the node is removed when its next reference on the bottom level is marked,
+ * and marked nodes are unlinked by the following traversals.
+ * Operations take O(log n) expected time.
+ * <p>
+ * As an {@link IntPriorityQueue}, it removes the least element by marking the references
+ * of the first node that is not marked yet, and then unlinks it like {@link #remove(int)}.
+ * The priority queue is quiescently consistent rather than linearizable, as the skip list queue
+ * of Herlihy and Shavit: {@link #pollFirst()} may return an element after an add of a less one
+ * has completed, if the poll passed the place of the new element before that.
+ */
+public class SkipListSetImpl implements Set, IntPriorityQueue {
+    private static final int MAX_LEVEL = 32;
+
+    private class Node {
+        final AtomicMarkableReference<Node>[] next;
+        final int x;
+        final int topLevel;
+
+        Node(int x, int topLevel) {
+            this.next = newReferences(topLevel + 1);
+            this.x = x;
+            this.topLevel = topLevel;
+        }
+    }
+
+    /**
+     * Creates an array of references, generic arrays cannot be created directly.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> AtomicMarkableReference<T>[] newReferences(int length) {
+        return (AtomicMarkableReference<T>[]) new AtomicMarkableReference<?>[length];
+    }
+
+    private final Node head = new Node(Integer.MIN_VALUE, MAX_LEVEL - 1);
+    private final Node tail = new Node(Integer.MAX_VALUE, MAX_LEVEL - 1);
+
+    {
+        for (int level = 0; level < MAX_LEVEL; level++) {
+            tail.next[level] = new AtomicMarkableReference<>(null, false);
+            head.next[level] = new AtomicMarkableReference<>(tail, false);
+        }
+    }
+
+    /**
+     * Returns the level of a new node, the node is on the level {@code k} with probability {@code 2^-k}.
+     */
+    private static int randomLevel() {
+        return Integer.numberOfTrailingZeros(ThreadLocalRandom.current().nextInt() | (1 << (MAX_LEVEL - 1)));
+    }
+
+    /**
+     * Fills preds and succs for every level, where preds[level].x < x <= succs[level].x,
+     * unlinks marked nodes on the way and returns true if x is found.
+     */
+    private boolean find(int x, Node[] preds, Node[] succs) {
+        boolean[] markHolder = new boolean[1];
+        retry:
+        while (true) {
+            Node pred = head;
+            for (int level = MAX_LEVEL - 1; level >= 0; level--) {
+                Node cur = pred.next[level].getReference();
+                while (true) {
+                    Node succ = cur.next[level].get(markHolder);
+                    while (markHolder[0]) {
+                        if (!pred.next[level].compareAndSet(cur, succ, false, false)) {
+                            continue retry;
+                        }
+                        cur = succ;
+                        succ = cur.next[level].get(markHolder);
+                    }
+                    if (cur.x < x) {
+                        pred = cur;
+                        cur = succ;
+                    } else {
+                        break;
+                    }
+                }
+                preds[level] = pred;
+                succs[level] = cur;
+            }
+            return succs[0].x == x;
+        }
+    }
+
+    @Override
+    public boolean add(int x) {
+        int topLevel = randomLevel();
+        Node[] preds = new Node[MAX_LEVEL];
+        Node[] succs = new Node[MAX_LEVEL];
+        boolean[] markHolder = new boolean[1];
+        while (true) {
+            if (find(x, preds, succs)) {
+                return false;
+            }
+            Node newNode = new Node(x, topLevel);
+            for (int level = 0; level <= topLevel; level++) {
+                newNode.next[level] = new AtomicMarkableReference<>(succs[level], false);
+            }
+            if (!preds[0].next[0].compareAndSet(succs[0], newNode, false, false)) {
+                continue;
+            }
+            // the node is in the set, upper levels only speed up the search
+            for (int level = 1; level <= topLevel; level++) {
+                while (true) {
+                    Node succ = succs[level];
+                    Node oldNext = newNode.next[level].get(markHolder);
+                    if (markHolder[0]) {
+                        return true; // the node is removed concurrently
+                    }
+                    if (oldNext != succ && !newNode.next[level].compareAndSet(oldNext, succ, false, false)) {
+                        continue;
+                    }
+                    if (preds[level].next[level].compareAndSet(succ, newNode, false, false)) {
+                        break;
+                    }
+                    find(x, preds, succs);
+                    if (succs[0] != newNode) {
+                        return true; // the node is removed concurrently
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public boolean remove(int x) {
+        Node[] preds = new Node[MAX_LEVEL];
+        Node[] succs = new Node[MAX_LEVEL];
+        boolean[] markHolder = new boolean[1];
+        if (!find(x, preds, succs)) {
+            return false;
+        }
+        Node victim = succs[0];
+        markUpperLevels(victim);
+        while (true) {
+            Node succ = victim.next[0].get(markHolder);
+            if (markHolder[0]) {
+                return false; // removed by another thread
+            }
+            if (victim.next[0].compareAndSet(succ, succ, false, true)) {
+                find(x, preds, succs);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Marks the references of the node on all levels above the bottom one, so the node is removed from them
+     * before it is removed from the set, and a node that is reached on an upper level is not removed yet.
+     */
+    private void markUpperLevels(Node node) {
+        boolean[] markHolder = new boolean[1];
+        for (int level = node.topLevel; level >= 1; level--) {
+            Node succ = node.next[level].get(markHolder);
+            while (!markHolder[0]) {
+                node.next[level].compareAndSet(succ, succ, false, true);
+                succ = node.next[level].get(markHolder);
+            }
+        }
+    }
+
+    @Override
+    public boolean contains(int x) {
+        boolean[] markHolder = new boolean[1];
+        Node pred = head;
+        Node cur = null;
+        for (int level = MAX_LEVEL - 1; level >= 0; level--) {
+            cur = pred.next[level].getReference();
+            while (true) {
+                Node succ = cur.next[level].get(markHolder);
+                while (markHolder[0]) {
+                    cur = succ;
+                    succ = cur.next[level].get(markHolder);
+                }
+                if (cur.x < x) {
+                    pred = cur;
+                    cur = succ;
+                } else {
+                    break;
+                }
+            }
+        }
+        return cur.x == x;
+    }
+
+    /**
+     * Returns the last node on the bottom level with the key less than x, which was not marked when it was passed,
+     * or the head if there is no such node. Like {@link #contains(int)}, it only follows references.
+     */
+    private Node findPredecessor(int x) {
+        Node pred = head;
+        for (int level = MAX_LEVEL - 1; level >= 0; level--) {
+            Node cur = pred.next[level].getReference();
+            while (true) {
+                while (cur.next[level].isMarked()) {
+                    cur = cur.next[level].getReference();
+                }
+                if (cur.x < x) {
+                    pred = cur;
+                    cur = cur.next[level].getReference();
+                } else {
+                    break;
+                }
+            }
+        }
+        return pred;
+    }
+
+    @Override
+    public void forEachInRange(int lo, int hi, IntConsumer action) {
+        if (lo > hi) {
+            return;
+        }
+        Node cur = findPredecessor(lo).next[0].getReference();
+        while (cur.x <= hi) {
+            Node next = cur.next[0].getReference();
+            if (next == null) {
+                return; // the tail
+            }
+            if (cur.x >= lo && !cur.next[0].isMarked()) {
+                action.accept(cur.x);
+            }
+            cur = next;
+        }
+    }
+
+    @Override
+    public int countInRange(int lo, int hi) {
+        if (lo > hi) {
+            return 0;
+        }
+        int count = 0;
+        Node cur = findPredecessor(lo).next[0].getReference();
+        while (cur.x <= hi) {
+            Node next = cur.next[0].getReference();
+            if (next == null) {
+                break; // the tail
+            }
+            if (cur.x >= lo && !cur.next[0].isMarked()) {
+                count++;
+            }
+            cur = next;
+        }
+        return count;
+    }
+
+    @Override
+    public int ceiling(int x) {
+        Node cur = findPredecessor(x).next[0].getReference();
+        while (cur.x < x || cur.next[0].isMarked()) {
+            cur = cur.next[0].getReference();
+        }
+        return cur.x;
+    }
+
+    @Override
+    public int floor(int x) {
+        // Integer.MAX_VALUE is the tail, so the predecessor of the tail is the last element
+        Node pred = (x == Integer.MAX_VALUE) ? findPredecessor(x) : findPredecessor(x + 1);
+        return (pred == head) ? Integer.MIN_VALUE : pred.x;
+    }
+
+    @Override
+    public int peekFirst() {
+        return ceiling(Integer.MIN_VALUE);
+    }
+
+    /**
+     * Removes the least element, it is quiescently consistent, see the class description.
+     */
+    @Override
+    public int pollFirst() {
+        Node polled = pollFrom(head);
+        if (polled == tail) {
+            return Integer.MAX_VALUE;
+        }
+        find(polled.x, new Node[MAX_LEVEL], new Node[MAX_LEVEL]); // unlinks the node on upper levels too
+        return polled.x;
+    }
+
+    /**
+     * Starts from a random node among k first ones, so consumers do not contend for the first node, as in SprayList.
+     * SprayList finds the node by random jumps on upper levels, but removals of the nodes where the jumps end
+     * leave no tall nodes near the head, and the jumps go further and further. So the start is found on
+     * the bottom level in O(k) steps, which only read nodes near the head.
+     * The polled node is unlinked only on the bottom level from the node before the start, not by {@link #find},
+     * which would go through the head, and its upper levels are unlinked by the following traversals.
+     * It falls back to {@link #pollFirst()} when there are no nodes from the start.
+     */
+    @Override
+    public int pollFirstRelaxed(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("Invalid k: " + k);
+        }
+        Node pred = head;
+        Node start = head.next[0].getReference();
+        for (int steps = ThreadLocalRandom.current().nextInt(k); steps > 0 && start != tail; steps--) {
+            Node next = start.next[0].getReference();
+            while (next != tail && next.next[0].isMarked()) {
+                next = next.next[0].getReference();
+            }
+            if (next == tail) {
+                break;
+            }
+            pred = start;
+            start = next;
+        }
+        Node polled = pollFrom(pred);
+        return (polled != tail) ? polled.x : pollFirst();
+    }
+
+    /**
+     * Removes the first node on the bottom level after pred, which is not removed yet, and returns it,
+     * or returns the tail if there is no such node. Like {@link #remove(int)}, it marks upper levels first,
+     * and then the mark of the bottom level reference removes the node from the set.
+     * The removed node and the removed ones before it are unlinked from pred on the bottom level at once,
+     * unless pred is removed or changed.
+     */
+    private Node pollFrom(Node pred) {
+        boolean[] markHolder = new boolean[1];
+        Node first = pred.next[0].getReference();
+        Node cur = first;
+        while (cur != tail) {
+            Node succ = cur.next[0].get(markHolder);
+            if (markHolder[0]) {
+                cur = succ;
+                continue;
+            }
+            markUpperLevels(cur);
+            if (cur.next[0].compareAndSet(succ, succ, false, true)) {
+                // the nodes from first to cur are marked, so their references do not change anymore
+                pred.next[0].compareAndSet(first, succ, false, false);
+                return cur;
+            }
+        }
+        return tail;
+    }
+}
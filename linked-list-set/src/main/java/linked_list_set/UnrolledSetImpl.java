@@ -0,0 +1,268 @@
+package linked_list_set;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicMarkableReference;
+import java.util.function.IntConsumer;
+
+/**
+ * Lock-free unrolled sorted list. Every node keeps a small sorted array of keys from its range,
+ * which starts at {@code lo} of the node and ends before {@code lo} of the next node,
+ * so a traversal reads one node per several keys and one array instead of one object per key.
+ * <p>
+ * Nodes are immutable except the next reference, and a node is changed by replacing it with a copy.
+ * As in {@link SetImpl}, the next reference is marked once the node is removed, but the marked reference
+ * points to the replacement, which is linked to the old successor, so the replacement gets into the list
+ * by the same CAS that unlinks a marked node. A full node is replaced by two halves, and an empty node
+ * is removed without replacement, so its range joins the range of the previous node. The first node
+ * covers keys from {@code Integer.MIN_VALUE} and is never removed, so all ints can be kept.
+ */
+public class UnrolledSetImpl implements Set {
+    private static final int DEFAULT_NODE_CAPACITY = 16;
+
+    private class Node {
+        final AtomicMarkableReference<Node> next;
+        final int lo;
+        final int[] keys;
+
+        Node(int lo, int[] keys, Node next) {
+            this.next = new AtomicMarkableReference<>(next, false);
+            this.lo = lo;
+            this.keys = keys;
+        }
+    }
+
+    private class Window {
+        final Node pred, cur, next;
+
+        Window(Node pred, Node cur, Node next) {
+            this.pred = pred;
+            this.cur = cur;
+            this.next = next;
+        }
+    }
+
+    private final int nodeCapacity;
+    private final Node head = new Node(Integer.MIN_VALUE, new int[0],
+            new Node(Integer.MIN_VALUE, new int[0], null));
+
+    public UnrolledSetImpl() {
+        this(DEFAULT_NODE_CAPACITY);
+    }
+
+    /**
+     * @param nodeCapacity the maximum number of keys in a node, a node is split in halves when it is exceeded
+     */
+    public UnrolledSetImpl(int nodeCapacity) {
+        if (nodeCapacity < 2) {
+            throw new IllegalArgumentException("Invalid node capacity: " + nodeCapacity);
+        }
+        this.nodeCapacity = nodeCapacity;
+    }
+
+    /**
+     * Returns the {@link Window}, where cur is the node with the range containing x and next is its successor,
+     * unlinking marked nodes on the way. Cur was not marked when its next reference was read.
+     */
+    private Window findWindow(int x) {
+        boolean[] markHolder = new boolean[1];
+        retry:
+        while (true) {
+            Node pred = head;
+            Node cur = head.next.getReference();
+            while (true) {
+                Node next = cur.next.get(markHolder);
+                if (markHolder[0]) {
+                    if (!pred.next.compareAndSet(cur, next, false, false)) {
+                        continue retry;
+                    }
+                    if (next == null || next.lo > x) {
+                        continue retry; // cur is removed, so x is in the range of pred now
+                    }
+                    cur = next;
+                } else if (next != null && next.lo <= x) {
+                    pred = cur;
+                    cur = next;
+                } else {
+                    return new Window(pred, cur, next);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the last node with the range containing x, which was not marked when it was passed,
+     * or the head if there is no such node. Like {@link SetImpl#contains(int)}, it only follows references.
+     */
+    private Node findOwner(int x) {
+        Node owner = head;
+        Node cur = head.next.getReference();
+        while (cur != null && cur.lo <= x) {
+            if (!cur.next.isMarked()) {
+                owner = cur;
+            }
+            cur = cur.next.getReference();
+        }
+        return owner;
+    }
+
+    /**
+     * Replaces cur of the window with the chain of new nodes, which ends with the next node of the window,
+     * and unlinks cur. Returns false if cur is changed after the window is found.
+     */
+    private boolean replace(Window w, Node replacement) {
+        if (!w.cur.next.compareAndSet(w.next, replacement, false, true)) {
+            return false;
+        }
+        w.pred.next.compareAndSet(w.cur, replacement, false, false);
+        return true;
+    }
+
+    @Override
+    public boolean add(int x) {
+        while (true) {
+            Window w = findWindow(x);
+            int[] keys = w.cur.keys;
+            int index = Arrays.binarySearch(keys, x);
+            if (index >= 0) {
+                return false;
+            }
+            index = -index - 1;
+            int[] newKeys = new int[keys.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            newKeys[index] = x;
+            System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+            Node replacement;
+            if (newKeys.length <= nodeCapacity) {
+                replacement = new Node(w.cur.lo, newKeys, w.next);
+            } else {
+                int half = newKeys.length / 2;
+                Node right = new Node(newKeys[half], Arrays.copyOfRange(newKeys, half, newKeys.length), w.next);
+                replacement = new Node(w.cur.lo, Arrays.copyOf(newKeys, half), right);
+            }
+            if (replace(w, replacement)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public boolean remove(int x) {
+        while (true) {
+            Window w = findWindow(x);
+            int[] keys = w.cur.keys;
+            int index = Arrays.binarySearch(keys, x);
+            if (index < 0) {
+                return false;
+            }
+            Node replacement;
+            if (keys.length == 1 && w.cur.lo != Integer.MIN_VALUE) {
+                replacement = w.next;
+            } else {
+                int[] newKeys = new int[keys.length - 1];
+                System.arraycopy(keys, 0, newKeys, 0, index);
+                System.arraycopy(keys, index + 1, newKeys, index, newKeys.length - index);
+                replacement = new Node(w.cur.lo, newKeys, w.next);
+            }
+            if (replace(w, replacement)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Lock-free: writes no shared memory and allocates nothing,
+     * but starts again when the node with x is replaced during the call.
+     */
+    @Override
+    public boolean contains(int x) {
+        while (true) {
+            Node owner = findOwner(x);
+            boolean found = Arrays.binarySearch(owner.keys, x) >= 0;
+            if (!owner.next.isMarked()) {
+                return found;
+            }
+        }
+    }
+
+    @Override
+    public void forEachInRange(int lo, int hi, IntConsumer action) {
+        if (lo > hi) {
+            return;
+        }
+        boolean[] markHolder = new boolean[1];
+        Node cur = findOwner(lo);
+        while (cur != null && cur.lo <= hi) {
+            // the next reference of a marked node leads to its replacement, so its keys are passed there
+            Node next = cur.next.get(markHolder);
+            if (!markHolder[0]) {
+                for (int i = lowerBound(cur.keys, lo); i < cur.keys.length && cur.keys[i] <= hi; i++) {
+                    action.accept(cur.keys[i]);
+                }
+            }
+            cur = next;
+        }
+    }
+
+    @Override
+    public int countInRange(int lo, int hi) {
+        if (lo > hi) {
+            return 0;
+        }
+        boolean[] markHolder = new boolean[1];
+        int count = 0;
+        Node cur = findOwner(lo);
+        while (cur != null && cur.lo <= hi) {
+            Node next = cur.next.get(markHolder);
+            if (!markHolder[0]) {
+                int from = lowerBound(cur.keys, lo);
+                int to = (hi == Integer.MAX_VALUE) ? cur.keys.length : lowerBound(cur.keys, hi + 1);
+                count += Math.max(0, to - from);
+            }
+            cur = next;
+        }
+        return count;
+    }
+
+    @Override
+    public int ceiling(int x) {
+        boolean[] markHolder = new boolean[1];
+        Node cur = findOwner(x);
+        while (cur != null) {
+            Node next = cur.next.get(markHolder);
+            if (!markHolder[0]) {
+                int i = lowerBound(cur.keys, x);
+                if (i < cur.keys.length) {
+                    return cur.keys[i];
+                }
+            }
+            cur = next;
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int floor(int x) {
+        boolean[] markHolder = new boolean[1];
+        int res = Integer.MIN_VALUE;
+        Node cur = head.next.getReference();
+        while (cur != null && cur.lo <= x) {
+            Node next = cur.next.get(markHolder);
+            if (!markHolder[0]) {
+                int i = (x == Integer.MAX_VALUE) ? cur.keys.length : lowerBound(cur.keys, x + 1);
+                if (i > 0) {
+                    res = cur.keys[i - 1];
+                }
+            }
+            cur = next;
+        }
+        return res;
+    }
+
+    /**
+     * Returns the index of the first key greater than or equal to x, or the length of keys if there is no such key.
+     */
+    private static int lowerBound(int[] keys, int x) {
+        int index = Arrays.binarySearch(keys, x);
+        return (index >= 0) ? index : -index - 1;
+    }
+}
@@ -2,8 +2,11 @@ package linked_list_set;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
+import java.util.TreeSet;
 
 import static org.junit.Assert.assertEquals;
 
@@ -12,7 +15,166 @@ public class FunctionalTest {
 
     @Test
     public void test() {
+        test(new SetImpl());
+    }
+
+    @Test
+    public void testSkipList() {
+        test(new SkipListSetImpl());
+    }
+
+    @Test
+    public void testUnrolled() {
+        test(new UnrolledSetImpl());
+        test(new UnrolledSetImpl(2));
+    }
+
+    @Test
+    public void testMinValue() {
         Set mySet = new SetImpl();
+        assertEquals(false, mySet.contains(Integer.MIN_VALUE));
+        assertEquals(true, mySet.add(Integer.MIN_VALUE));
+        assertEquals(true, mySet.contains(Integer.MIN_VALUE));
+        assertEquals(true, mySet.remove(Integer.MIN_VALUE));
+        assertEquals(false, mySet.contains(Integer.MIN_VALUE));
+    }
+
+    @Test
+    public void testRange() {
+        testRange(new SetImpl());
+    }
+
+    @Test
+    public void testSkipListRange() {
+        testRange(new SkipListSetImpl());
+    }
+
+    @Test
+    public void testUnrolledRange() {
+        testRange(new UnrolledSetImpl(4));
+    }
+
+    @Test
+    public void testUnrolledBounds() {
+        Set mySet = new UnrolledSetImpl(2);
+        for (int x : new int[]{Integer.MAX_VALUE, Integer.MIN_VALUE, 0, -1, 1}) {
+            assertEquals(true, mySet.add(x));
+        }
+        assertEquals(true, mySet.contains(Integer.MIN_VALUE));
+        assertEquals(true, mySet.contains(Integer.MAX_VALUE));
+        assertEquals(5, mySet.countInRange(Integer.MIN_VALUE, Integer.MAX_VALUE));
+        assertEquals(Integer.MAX_VALUE, mySet.floor(Integer.MAX_VALUE));
+        for (int x : new int[]{0, Integer.MAX_VALUE, -1, 1, Integer.MIN_VALUE}) {
+            assertEquals(true, mySet.remove(x));
+            assertEquals(false, mySet.contains(x));
+        }
+        assertEquals(0, mySet.countInRange(Integer.MIN_VALUE, Integer.MAX_VALUE));
+    }
+
+    private void testRange(Set mySet) {
+        TreeSet<Integer> javaSet = new TreeSet<>();
+        for (int i = 0; i < 100_000; i++) {
+            int x = R.nextInt(100);
+            if (R.nextBoolean()) {
+                assertEquals(javaSet.add(x), mySet.add(x));
+            } else {
+                assertEquals(javaSet.remove(x), mySet.remove(x));
+            }
+            int lo = R.nextInt(110) - 5;
+            int hi = lo + R.nextInt(30);
+            List<Integer> elements = new ArrayList<>();
+            mySet.forEachInRange(lo, hi, elements::add);
+            assertEquals(new ArrayList<>(javaSet.subSet(lo, true, hi, true)), elements);
+            assertEquals(javaSet.subSet(lo, true, hi, true).size(), mySet.countInRange(lo, hi));
+            Integer ceiling = javaSet.ceiling(lo);
+            assertEquals(ceiling == null ? Integer.MAX_VALUE : ceiling, mySet.ceiling(lo));
+            Integer floor = javaSet.floor(hi);
+            assertEquals(floor == null ? Integer.MIN_VALUE : floor, mySet.floor(hi));
+        }
+        assertEquals(javaSet.size(), mySet.countInRange(Integer.MIN_VALUE, Integer.MAX_VALUE));
+        assertEquals(javaSet.isEmpty() ? Integer.MIN_VALUE : javaSet.last(), mySet.floor(Integer.MAX_VALUE));
+        assertEquals(0, mySet.countInRange(1, 0));
+    }
+
+    @Test
+    public void testCursor() {
+        SetImpl mySet = new SetImpl();
+        SetImpl.Cursor cursor = mySet.cursor();
+        java.util.Set<Integer> javaSet = new HashSet<>();
+        for (int i = 0; i < 1_000_000; i++) {
+            int x = R.nextInt(30);
+            switch (R.nextInt(4)) {
+            case 0:
+                assertEquals(javaSet.add(x), cursor.add(x));
+                break;
+            case 1:
+                assertEquals(javaSet.contains(x), cursor.contains(x));
+                break;
+            case 2:
+                assertEquals(javaSet.remove(x), cursor.remove(x));
+                break;
+            case 3:
+                // the finger node can be removed by another cursor
+                assertEquals(javaSet.remove(x), mySet.remove(x));
+                break;
+            }
+        }
+        // sequential ids
+        for (int x = 100; x < 100_000; x++) {
+            assertEquals(true, cursor.add(x));
+            assertEquals(true, cursor.contains(x));
+        }
+        for (int x = 100; x < 100_000; x += 2) {
+            assertEquals(true, cursor.remove(x));
+        }
+        for (int x = 100; x < 100_000; x++) {
+            assertEquals(x % 2 == 1, cursor.contains(x));
+        }
+    }
+
+    @Test
+    public void testPriorityQueue() {
+        IntPriorityQueue queue = new SkipListSetImpl();
+        TreeSet<Integer> javaSet = new TreeSet<>();
+        for (int i = 0; i < 1_000_000; i++) {
+            int x = R.nextInt(100);
+            switch (R.nextInt(4)) {
+            case 0:
+            case 1:
+                assertEquals(javaSet.add(x), queue.add(x));
+                break;
+            case 2:
+                assertEquals(javaSet.isEmpty() ? Integer.MAX_VALUE : javaSet.pollFirst(), queue.pollFirst());
+                break;
+            case 3:
+                assertEquals(javaSet.isEmpty() ? Integer.MAX_VALUE : javaSet.first(), queue.peekFirst());
+                break;
+            }
+        }
+    }
+
+    @Test
+    public void testPriorityQueueRelaxed() {
+        IntPriorityQueue queue = new SkipListSetImpl();
+        TreeSet<Integer> javaSet = new TreeSet<>();
+        for (int i = 0; i < 1_000_000; i++) {
+            int x = R.nextInt(1000);
+            if (R.nextBoolean()) {
+                assertEquals(javaSet.add(x), queue.add(x));
+            } else {
+                int k = 1 + R.nextInt(16);
+                int polled = queue.pollFirstRelaxed(k);
+                if (javaSet.isEmpty()) {
+                    assertEquals(Integer.MAX_VALUE, polled);
+                } else {
+                    assertEquals(true, javaSet.remove(polled));
+                    assertEquals(true, javaSet.headSet(polled).size() < k);
+                }
+            }
+        }
+    }
+
+    private void test(Set mySet) {
         java.util.Set<Integer> javaSet = new HashSet<>();
         for (int i = 0; i < 1_000_000; i++) {
             int op = R.nextInt(3);
@@ -0,0 +1,134 @@
+package linked_list_set;
+
+
+import com.devexperts.dxlab.lincheck.LinChecker;
+import com.devexperts.dxlab.lincheck.annotations.Operation;
+import com.devexperts.dxlab.lincheck.annotations.Param;
+import com.devexperts.dxlab.lincheck.annotations.Reset;
+import com.devexperts.dxlab.lincheck.paramgen.IntGen;
+import com.devexperts.dxlab.lincheck.stress.StressCTest;
+import com.devexperts.dxlab.lincheck.verifier.LongExLinearizabilityVerifier;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+@Param(name = "key", gen = IntGen.class, conf = "1:3")
+@StressCTest
+@StressCTest(iterations = 10, actorsPerThread = {"30:30", "30:30"},
+    verifier = LongExLinearizabilityVerifier.class)
+// pollFirst is only quiescently consistent, so it is checked by testQuiescentConsistency instead
+public class PriorityQueueLinearizabilityTest {
+    private static final int ROUNDS = 1000;
+    private static final int THREADS = 3;
+    private static final int OPS_PER_THREAD = 20;
+    private static final int MAX_KEY = 100;
+
+    private IntPriorityQueue queue;
+
+    @Reset
+    public void reset() {
+        queue = new SkipListSetImpl();
+    }
+
+    @Operation(params = "key")
+    public boolean add(int x) {
+        return queue.add(x);
+    }
+
+    @Operation
+    public int peekFirst() {
+        return queue.peekFirst();
+    }
+
+    @Test
+    public void test() {
+        LinChecker.check(PriorityQueueLinearizabilityTest.class);
+    }
+
+    /**
+     * Runs rounds of concurrent adds and polls separated by quiescent points. An element that is present
+     * during the whole round comes before all polls in any order of the round, so every polled element
+     * is less than it, and elements are neither lost nor polled twice.
+     */
+    @Test
+    public void testQuiescentConsistency() throws InterruptedException {
+        SkipListSetImpl queue = new SkipListSetImpl();
+        TreeSet<Integer> expected = new TreeSet<>();
+        Random random = new Random(0);
+        for (int round = 0; round < ROUNDS; round++) {
+            TreeSet<Integer> before = new TreeSet<>(expected);
+            int[][] keys = new int[THREADS][OPS_PER_THREAD];
+            for (int[] threadKeys : keys) {
+                for (int i = 0; i < OPS_PER_THREAD; i++) {
+                    threadKeys[i] = random.nextBoolean() ? 1 + random.nextInt(MAX_KEY) : 0; // 0 is a poll
+                }
+            }
+            List<List<Integer>> polled = new ArrayList<>();
+            List<List<Integer>> added = new ArrayList<>();
+            Thread[] threads = new Thread[THREADS];
+            for (int t = 0; t < THREADS; t++) {
+                int[] threadKeys = keys[t];
+                List<Integer> threadPolled = new ArrayList<>();
+                List<Integer> threadAdded = new ArrayList<>();
+                polled.add(threadPolled);
+                added.add(threadAdded);
+                threads[t] = new Thread(() -> {
+                    for (int key : threadKeys) {
+                        if (key == 0) {
+                            int x = queue.pollFirst();
+                            if (x != Integer.MAX_VALUE) {
+                                threadPolled.add(x);
+                            }
+                        } else if (queue.add(key)) {
+                            threadAdded.add(key);
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            // a key can be added and polled several times in a round, but adds and polls of it alternate
+            int[] balance = new int[MAX_KEY + 1];
+            for (List<Integer> threadAdded : added) {
+                for (int x : threadAdded) {
+                    balance[x]++;
+                }
+            }
+            TreeSet<Integer> stayed = new TreeSet<>(before);
+            for (List<Integer> threadPolled : polled) {
+                for (int x : threadPolled) {
+                    balance[x]--;
+                    stayed.remove(x);
+                }
+            }
+            for (int x = 1; x <= MAX_KEY; x++) {
+                int present = (before.contains(x) ? 1 : 0) + balance[x];
+                assertTrue("lost or polled twice: " + x, present == 0 || present == 1);
+                if (present == 1) {
+                    expected.add(x);
+                } else {
+                    expected.remove(x);
+                }
+            }
+            if (!stayed.isEmpty()) {
+                for (List<Integer> threadPolled : polled) {
+                    for (int x : threadPolled) {
+                        assertTrue("polled " + x + " while " + stayed.first() + " stayed", x < stayed.first());
+                    }
+                }
+            }
+            for (int x = 1; x <= MAX_KEY; x++) {
+                assertEquals(expected.contains(x), queue.contains(x));
+            }
+        }
+    }
+}
\ No newline at end of file
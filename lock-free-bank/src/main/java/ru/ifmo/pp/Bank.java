@@ -34,6 +34,14 @@ public interface Bank {
      */
     public long getTotalAmount();
 
+    /**
+     * Copies amounts of all accounts into the specified array, they are all taken at the same moment of time.
+     *
+     * @param out array for amounts, the amount of account i is stored into <code>out[i]</code>.
+     * @throws IllegalArgumentException when out is shorter than the {@link #getNumberOfAccounts() number of accounts}.
+     */
+    public void snapshot(long[] out);
+
     /**
      * Deposits specified amount to account.
      *
@@ -69,4 +77,20 @@ public interface Bank {
      * @throws IllegalStateException when there is not enough funds in source account or too much in target one.
      */
     public void transfer(int fromIndex, int toIndex, long amount);
+
+    /**
+     * Transfers specified amounts between accounts atomically: the transfer from <code>fromIndices[i]</code>
+     * to <code>toIndices[i]</code> of <code>amounts[i]</code> is performed for every i in order,
+     * and either all of them are performed, or none of them if any of them fails.
+     *
+     * @param fromIndices account indices to withdraw from.
+     * @param toIndices account indices to deposit to.
+     * @param amounts positive amounts to transfer.
+     * @throws IllegalArgumentException when arrays have different lengths, some amount <= 0,
+     * or some fromIndices[i] == toIndices[i].
+     * @throws IndexOutOfBoundsException when account indices are invalid.
+     * @throws IllegalStateException when some transfer does not have enough funds in source account
+     * or too much in target one after the previous transfers.
+     */
+    public void transferBatch(int[] fromIndices, int[] toIndices, long[] amounts);
 }
@@ -1,23 +1,40 @@
 package ru.ifmo.pp;
 
-import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * Bank implementation.
  * This class is thread-safe and lock-free using operation objects.
  *
- * <p>This implementation is based on "A Practical Multi-Word Compare-and-Swap Operation"  by T. L. Harris et al.
- * It uses a simplified and faster version of DCSS operation that relies for its correctness on the fact that
- * Account instances in {@link #accounts} array never suffer from ABA problem.
- * See also "Practical lock-freedom" by Keir Fraser.
- * See {@link #acquire(int, Op)} method.
+ * <p>Operations on multiple accounts are performed by {@link LongMultiWordCas},
+ * and operations on a single account are regular lock-free compareAndSet loops on its amount,
+ * which allocate nothing unless they meet an operation on multiple accounts in progress.
+ * Snapshots of all accounts are read without acquiring them, see {@link #snapshot(long[])}.
  */
 public class BankImpl implements Bank {
     /**
-     * An array of accounts by index.
-     * Account instances here are never reused (there is no ABA).
+     * The number of double collects in {@link #snapshot(long[])} before it falls back to acquiring all accounts.
      */
-    private final AtomicReferenceArray<Account> accounts;
+    private static final int COLLECT_ATTEMPTS = 4;
+
+    /**
+     * The number of longs in a cache line.
+     */
+    private static final int PADDING = 8;
+
+    /**
+     * Amounts of accounts by index.
+     */
+    private final LongMultiWordCas accounts;
+
+    /**
+     * The numbers of started and finished updates by account index. Every change of the amount in an account
+     * happens after its started counter is incremented and before its finished counter is incremented.
+     * Both counters of an account are kept in its own cache line, at {@link #started(int)} and the next element,
+     * so updates of adjacent accounts do not invalidate the lines of each other.
+     */
+    private final AtomicLongArray updates;
 
     /**
      * Creates new bank instance.
@@ -25,10 +42,8 @@ public class BankImpl implements Bank {
      * @param n the number of accounts (numbered from 0 to n-1).
      */
     public BankImpl(int n) {
-        accounts = new AtomicReferenceArray<>(n);
-        for (int i = 0; i < n; i++) {
-            accounts.set(i, new Account(0));
-        }
+        accounts = new LongMultiWordCas(n);
+        updates = new AtomicLongArray(n * PADDING);
     }
 
     /**
@@ -44,17 +59,11 @@ public class BankImpl implements Bank {
      */
     @Override
     public long getAmount(int index) {
-        while (true) {
-            Account account = accounts.get(index);
-            /*
-             * If there is a pending operation on this account, then help to complete it first using
-             * its invokeOperation method. If the result is false then there is no pending operation,
-             * thus the account amount can be safely returned.
-             */
-            if (!account.invokeOperation()) {
-                return account.amount;
-            }
-        }
+        /*
+         * If there is a pending operation on this account, then get helps to complete it first,
+         * thus the account amount can be safely returned.
+         */
+        return accounts.get(index);
     }
 
     /**
@@ -62,14 +71,105 @@ public class BankImpl implements Bank {
      */
     @Override
     public long getTotalAmount() {
-        /**
-         * This operation requires atomic read of all accounts, thus it creates an operation descriptor.
-         * Operation's invokeOperation method acquires all accounts, computes the total amount, and releases
-         * all accounts. This method returns the result.
+        long[] amounts = new long[accounts.length()];
+        snapshot(amounts);
+        long sum = 0;
+        for (long amount : amounts) {
+            sum += amount;
+        }
+        return sum;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void snapshot(long[] out) {
+        int n = accounts.length();
+        if (out.length < n)
+            throw new IllegalArgumentException("Array is shorter than the number of accounts: " + out.length);
+        /*
+         * Double collect: the amount of every account is read between the reads of its finished and started counters,
+         * and it is taken only if they are equal, so no update was in progress on the account in between.
+         * The second pass checks that no update has started since then, so all amounts were in the accounts
+         * at the moment between the passes. Writers are not stalled by this, they only increment the counters.
+         */
+        long[] stamps = new long[n];
+        for (int attempt = 0; attempt < COLLECT_ATTEMPTS; attempt++) {
+            if (collect(out, stamps) && validate(stamps)) {
+                return;
+            }
+        }
+        /*
+         * Accounts are updated too often for a double collect to succeed, so this call falls back to
+         * the operation descriptor that acquires all accounts, which does not change them.
          */
-        TotalAmountOp op = new TotalAmountOp();
-        op.invokeOperation();
-        return op.sum;
+        SnapshotOp op = new SnapshotOp(n);
+        accounts.invoke(op);
+        for (int i = 0; i < n; i++) {
+            out[i] = op.amounts.get(i);
+        }
+    }
+
+    /**
+     * Reads amounts of all accounts and the numbers of updates on them.
+     * Returns false if an update was in progress on some account.
+     */
+    private boolean collect(long[] out, long[] stamps) {
+        for (int i = 0; i < stamps.length; i++) {
+            long stamp = updates.get(started(i) + 1);
+            long amount = accounts.get(i);
+            if (updates.get(started(i)) != stamp) {
+                return false;
+            }
+            out[i] = amount;
+            stamps[i] = stamp;
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if no update has started on any account since {@link #collect(long[], long[])}.
+     */
+    private boolean validate(long[] stamps) {
+        for (int i = 0; i < stamps.length; i++) {
+            if (updates.get(started(i)) != stamps[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Marks the start of an update of the accounts. Indices are checked first, so every started update finishes.
+     */
+    private void startUpdate(int[] indices) {
+        int n = indices.length;
+        if (n > 0 && (indices[0] < 0 || indices[n - 1] >= accounts.length()))
+            throw new IndexOutOfBoundsException("Indices: " + Arrays.toString(indices));
+        for (int index : indices) {
+            updates.incrementAndGet(started(index));
+        }
+    }
+
+    /**
+     * Marks the end of an update of the accounts.
+     */
+    private void finishUpdate(int[] indices) {
+        for (int index : indices) {
+            updates.incrementAndGet(started(index) + 1);
+        }
+    }
+
+    /**
+     * Returns the position of the started counter of the account in {@link #updates}, the finished one is next.
+     *
+     * @throws IndexOutOfBoundsException when index is invalid.
+     */
+    private int started(int index) {
+        if (index < 0 || index >= accounts.length())
+            throw new IndexOutOfBoundsException("Index: " + index);
+        return index * PADDING;
     }
 
     /**
@@ -88,22 +188,23 @@ public class BankImpl implements Bank {
          * This operation depends only on a single account, thus it can be directly
          * performed using a regular lock-free compareAndSet loop.
          */
-        while (true) {
-            Account account = accounts.get(index);
-            /*
-             * If there is a pending operation on this account, then help to complete it first using
-             * its invokeOperation method. If the result is false then there is no pending operation,
-             * thus the account can be safely updated.
-             */
-            if (!account.invokeOperation()) {
-                if (account.amount + amount > MAX_AMOUNT) {
+        updates.incrementAndGet(started(index));
+        try {
+            while (true) {
+                /*
+                 * If there is a pending operation on this account, then get helps to complete it first,
+                 * and compareAndSet fails if another operation acquires the account after that.
+                 */
+                long current = accounts.get(index);
+                if (current + amount > MAX_AMOUNT) {
                     throw new IllegalStateException("Overflow");
                 }
-                Account updated = new Account(account.amount + amount);
-                if (accounts.compareAndSet(index, account, updated)) {
-                    return updated.amount;
+                if (accounts.compareAndSet(index, current, current + amount)) {
+                    return current + amount;
                 }
             }
+        } finally {
+            updates.incrementAndGet(started(index) + 1);
         }
     }
 
@@ -115,17 +216,19 @@ public class BankImpl implements Bank {
         if (amount <= 0) {
             throw new IllegalArgumentException("Invalid amount: " + amount);
         }
-        while (true) {
-            Account account = accounts.get(index);
-            if (!account.invokeOperation()) {
-                if (account.amount - amount < 0) {
+        updates.incrementAndGet(started(index));
+        try {
+            while (true) {
+                long current = accounts.get(index);
+                if (current - amount < 0) {
                     throw new IllegalStateException("Underflow");
                 }
-                Account updated = new Account(account.amount - amount);
-                if (accounts.compareAndSet(index, account, updated)) {
-                    return updated.amount;
+                if (accounts.compareAndSet(index, current, current - amount)) {
+                    return current - amount;
                 }
             }
+        } finally {
+            updates.incrementAndGet(started(index) + 1);
         }
     }
 
@@ -143,214 +246,172 @@ public class BankImpl implements Bank {
             throw new IllegalStateException("Underflow/overflow");
         /**
          * This operation requires atomic read of two accounts, thus it creates an operation descriptor.
-         * Operation's invokeOperation method acquires both accounts, computes the result of operation
+         * LongMultiWordCas.invoke acquires both accounts, computes the result of operation
          * (if a form of error message), and releases both accounts. This method throws the exception with
          * the corresponding message if needed.
          */
         TransferOp op = new TransferOp(fromIndex, toIndex, amount);
-        op.invokeOperation();
+        startUpdate(op.indices);
+        try {
+            accounts.invoke(op);
+        } finally {
+            finishUpdate(op.indices);
+        }
         if (op.errorMessage != null) {
             throw new IllegalStateException(op.errorMessage);
         }
     }
 
-
-    /**
-     * This is an implementation of a restricted form of Harris DCSS operation:
-     * It atomically checks that op.completed is false and replaces accounts[index] with AcquiredAccount instance
-     * that hold a reference to the op.
-     * This method returns null if op.completed is true.
-     */
-    private AcquiredAccount acquire(int index, Op op) {
-        while (true) {
-            if (op.completed) {
-                return null;
-            }
-            Account account = accounts.get(index);
-            if (account instanceof AcquiredAccount) {
-                AcquiredAccount acquiredAccount = (AcquiredAccount) account;
-                if (op == acquiredAccount.op) {
-                    return acquiredAccount;
-                } else {
-                    acquiredAccount.invokeOperation();
-                }
-            } else {
-                if (op.completed) {
-                    return null;
-                }
-                AcquiredAccount acquiredAccount = new AcquiredAccount(account.amount, op);
-                if (accounts.compareAndSet(index, account, acquiredAccount)) {
-                    return acquiredAccount;
-                }
-            }
-        }
-    }
-
     /**
-     * Releases an account that was previously acquired by {@link #acquire(int, Op)}.
-     * This method does nothing if the account at index is not currently acquired.
+     * {@inheritDoc}
      */
-    private void release(int index, Op op) {
-        assert op.completed; // must be called only on operations that were already completed
-        Account account = accounts.get(index);
-        if (account instanceof AcquiredAccount) {
-            AcquiredAccount acquiredAccount = (AcquiredAccount) account;
-            if (acquiredAccount.op == op) {
-                // release performs update at most once while the account is still acquired
-                Account updated = new Account(acquiredAccount.newAmount);
-                accounts.compareAndSet(index, account, updated);
-            }
+    @Override
+    public void transferBatch(int[] fromIndices, int[] toIndices, long[] amounts) {
+        if (fromIndices.length != toIndices.length || fromIndices.length != amounts.length)
+            throw new IllegalArgumentException("Different lengths of fromIndices, toIndices and amounts");
+        for (int i = 0; i < amounts.length; i++) {
+            if (amounts[i] <= 0)
+                throw new IllegalArgumentException("Invalid amount: " + amounts[i]);
+            if (fromIndices[i] == toIndices[i])
+                throw new IllegalArgumentException("fromIndex == toIndex");
+            if (amounts[i] > MAX_AMOUNT)
+                throw new IllegalStateException("Underflow/overflow");
         }
-    }
-
-    /**
-     * Immutable account data structure.
-     */
-    private static class Account {
         /**
-         * Amount of funds in this account.
+         * All touched accounts are acquired in the ascending order of indices under one operation descriptor,
+         * so the transfers are performed in one helping round, and no intermediate state is visible.
          */
-        final long amount;
-
-        Account(long amount) {
-            this.amount = amount;
+        TransferBatchOp op = new TransferBatchOp(fromIndices.clone(), toIndices.clone(), amounts.clone());
+        startUpdate(op.indices);
+        try {
+            accounts.invoke(op);
+        } finally {
+            finishUpdate(op.indices);
         }
-
-        /**
-         * Invokes operation that is pending on this account.
-         * This implementation returns false (no pending operation),
-         * other implementations return true.
-         */
-        boolean invokeOperation() {
-            return false;
+        if (op.errorMessage != null) {
+            throw new IllegalStateException(op.errorMessage);
         }
     }
 
     /**
-     * Account that was acquired as a part of in-progress operation that spans multiple accounts.
-     *
-     * @see #acquire(int, Op)
+     * Descriptor for {@link #snapshot(long[])} operation when double collects fail.
      */
-    private static class AcquiredAccount extends Account {
-        final Op op;
-
+    private static class SnapshotOp extends LongMultiWordCas.Op {
         /**
-         * New amount of funds in this account when op completes.
+         * The result of snapshot operation is stored here before the operation completes.
          */
-        long newAmount;
+        final AtomicLongArray amounts;
 
-        AcquiredAccount(long amount, Op op) {
-            super(amount);
-            this.op = op;
-            this.newAmount = amount;
+        SnapshotOp(int n) {
+            super(allIndices(n));
+            amounts = new AtomicLongArray(n);
         }
 
         @Override
-        boolean invokeOperation() {
-            op.invokeOperation();
-            return true;
+        protected void compute(long[] values, long[] newValues) {
+            /*
+             * Multiple threads might store amounts concurrently, however, they all store the same values,
+             * and atomic elements publish them to the thread that invoked the operation.
+             */
+            for (int i = 0; i < values.length; i++) {
+                amounts.set(i, values[i]);
+            }
         }
     }
 
-    /**
-     * Abstract operation that acts on multiple accounts.
-     */
-    private abstract class Op {
-        /**
-         * True when operation has completed.
-         */
-        volatile boolean completed;
-
-        abstract void invokeOperation();
+    private static int[] allIndices(int n) {
+        int[] indices = new int[n];
+        for (int i = 0; i < n; i++) {
+            indices[i] = i;
+        }
+        return indices;
     }
 
     /**
-     * Descriptor for {@link #getTotalAmount()} operation.
+     * Descriptor for {@link #transfer(int, int, long) transfer(...)} operation.
+     * Accounts are acquired in the ascending order of indices, so the amount is negated when toIndex is less.
      */
-    private class TotalAmountOp extends Op {
-        /**
-         * The result of getTotalAmount operation is stored here before setting
-         * {@link #completed} to true.
-         */
-        long sum;
+    private static class TransferOp extends LongMultiWordCas.Op {
+        final long amount;
+
+        String errorMessage;
+
+        TransferOp(int fromIndex, int toIndex, long amount) {
+            super(new int[]{Math.min(fromIndex, toIndex), Math.max(fromIndex, toIndex)});
+            this.amount = (fromIndex < toIndex) ? amount : -amount;
+        }
 
         @Override
-        void invokeOperation() {
-            long sum = 0;
-            int i;
-            int n = accounts.length();
-            for (i = 0; i < n; i++) {
-                AcquiredAccount account = acquire(i, this);
-                if (account == null)
-                    break;
-                sum += account.amount;
-            }
-            if (i == n) {
-                /*
-                 * If i == n, then all acquired accounts were not null and full sum was calculated.
-                 * this.sum = sum assignment below has a benign data race. Multiple threads might to this assignment
-                 * concurrently, however, they are all guaranteed to be assigning the same value.
-                 */
-                this.sum = sum;
-                this.completed = true; // volatile write to completed field _after_ the sum was written
-            }
-            /*
-             * As performance optimization, only acquired accounts are released. There is no harm in calling
-             * release for all accounts, though.
-             */
-            for (; --i >= 0; ) {
-                release(i, this);
+        protected void compute(long[] values, long[] newValues) {
+            long from = values[0];
+            long to = values[1];
+            if (from - amount < 0) {
+                errorMessage = "Underflow";
+            } else if (from - amount > MAX_AMOUNT) {
+                errorMessage = "Overflow";
+            } else if (to + amount < 0) {
+                errorMessage = "Underflow";
+            } else if (to + amount > MAX_AMOUNT) {
+                errorMessage = "Overflow";
+            } else {
+                newValues[0] = from - amount;
+                newValues[1] = to + amount;
             }
         }
     }
 
     /**
-     * Descriptor for {@link #transfer(int, int, long) transfer(...)} operation.
+     * Descriptor for {@link #transferBatch(int[], int[], long[]) transferBatch(...)} operation.
+     * Arrays are copied by the caller, so all helpers compute the same result.
      */
-    private class TransferOp extends Op {
-        final int fromIndex;
-        final int toIndex;
-        final long amount;
+    private static class TransferBatchOp extends LongMultiWordCas.Op {
+        final int[] fromIndices;
+        final int[] toIndices;
+        final long[] amounts;
 
         String errorMessage;
 
-        TransferOp(int fromIndex, int toIndex, long amount) {
-            this.fromIndex = Math.min(fromIndex, toIndex);
-            this.toIndex = Math.max(fromIndex, toIndex);
-            this.amount = (this.fromIndex == fromIndex) ? amount : -amount;
+        TransferBatchOp(int[] fromIndices, int[] toIndices, long[] amounts) {
+            super(touchedIndices(fromIndices, toIndices));
+            this.fromIndices = fromIndices;
+            this.toIndices = toIndices;
+            this.amounts = amounts;
         }
 
         @Override
-        void invokeOperation() {
-            int[] indices = {fromIndex, toIndex};
-            AcquiredAccount[] acquired = {null, null};
-            int i = 0;
-            for (; i < indices.length; ++i) {
-                AcquiredAccount account = acquire(indices[i], this);
-                if (account == null) {
-                    break;
-                } else {
-                    acquired[i] = account;
-                }
-            }
-            if (i == indices.length) {
-                if (acquired[0].amount - amount < 0) {
-                    errorMessage = "Underflow";
-                } else if (acquired[0].amount - amount > MAX_AMOUNT) {
-                    errorMessage = "Overflow";
-                } else if (acquired[1].amount + amount < 0) {
+        protected void compute(long[] values, long[] newValues) {
+            long[] balances = values.clone();
+            for (int i = 0; i < amounts.length; i++) {
+                int from = Arrays.binarySearch(indices, fromIndices[i]);
+                int to = Arrays.binarySearch(indices, toIndices[i]);
+                if (balances[from] - amounts[i] < 0) {
                     errorMessage = "Underflow";
-                } else if (acquired[1].amount + amount > MAX_AMOUNT) {
+                    return;
+                } else if (balances[to] + amounts[i] > MAX_AMOUNT) {
                     errorMessage = "Overflow";
-                } else {
-                    acquired[0].newAmount = acquired[0].amount - amount;
-                    acquired[1].newAmount = acquired[1].amount + amount;
+                    return;
                 }
-                completed = true;
+                balances[from] -= amounts[i];
+                balances[to] += amounts[i];
             }
-            for (; --i >= 0; ) {
-                release(indices[i], this);
+            System.arraycopy(balances, 0, newValues, 0, balances.length);
+        }
+
+        /**
+         * Returns distinct indices of the accounts in the ascending order.
+         */
+        private static int[] touchedIndices(int[] fromIndices, int[] toIndices) {
+            int[] indices = new int[fromIndices.length + toIndices.length];
+            System.arraycopy(fromIndices, 0, indices, 0, fromIndices.length);
+            System.arraycopy(toIndices, 0, indices, fromIndices.length, toIndices.length);
+            Arrays.sort(indices);
+            int n = 0;
+            for (int i = 0; i < indices.length; i++) {
+                if (n == 0 || indices[n - 1] != indices[i]) {
+                    indices[n++] = indices[i];
+                }
             }
+            return Arrays.copyOf(indices, n);
         }
     }
 }
@@ -0,0 +1,353 @@
+package ru.ifmo.pp;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Array of non-negative long words that supports atomic updates of multiple words.
+ * This class is thread-safe and lock-free using operation descriptors, like {@link MultiWordCas},
+ * but a word that is not acquired by an operation is a plain long, so reads and single-word updates
+ * allocate nothing.
+ *
+ * <p>An operation acquires a word by replacing its value with a negative tag that holds a stamp of
+ * {@link Acquisition}, which keeps the value. Stamps are counted per word in {@link #stamps}, so the tag
+ * is put into the word at most once, which rules out ABA on release. Acquisitions that may be in the tag
+ * of a word are kept in its slot in {@link #slots}, where they are found by the stamp. There is one of them
+ * usually, and more only while several threads race to acquire the word, so there is no shared state
+ * other than the words themselves.
+ * A thread that installs the tag after another thread has acquired the word for the same operation
+ * (its read of the value was stale) loses: the operation keeps the first acquisition of every word,
+ * and the lost one is resolved by restoring the value it replaced.
+ */
+public class LongMultiWordCas {
+    private static final long TAG = Long.MIN_VALUE;
+
+    /**
+     * Operation that acts on multiple words. The descriptor is shared by all threads that help to complete it,
+     * so it is used for one invocation only.
+     */
+    public abstract static class Op {
+        /**
+         * Indices of words in the ascending order.
+         */
+        final int[] indices;
+
+        /**
+         * Acquisitions of words by this operation in the order of indices.
+         */
+        final AtomicReferenceArray<Acquisition> acquired;
+
+        /**
+         * New values of words, they are written before {@link #completed} is set. Helpers that race to complete
+         * the operation write the same values, and atomic elements publish them to the threads that release words.
+         */
+        final AtomicLongArray newValues;
+
+        /**
+         * True when {@link #compute} returned a negative value, so the operation completed with the old values.
+         * It is written before {@link #completed} is set, and helpers that race to complete the operation
+         * write the same value.
+         */
+        boolean rejected;
+
+        /**
+         * True when operation has completed.
+         */
+        volatile boolean completed;
+
+        /**
+         * @param indices distinct indices of words in the ascending order.
+         * @throws IllegalArgumentException when indices are not in the ascending order.
+         */
+        protected Op(int[] indices) {
+            for (int i = 1; i < indices.length; i++) {
+                if (indices[i - 1] >= indices[i]) {
+                    throw new IllegalArgumentException("Indices are not in the ascending order: " +
+                            Arrays.toString(indices));
+                }
+            }
+            this.indices = indices;
+            this.acquired = new AtomicReferenceArray<Acquisition>(indices.length);
+            this.newValues = new AtomicLongArray(indices.length);
+        }
+
+        /**
+         * Computes the result of operation from the values of its words, both in the order of indices.
+         * New values, which must be non-negative, are stored into newValues, which is filled with the current
+         * values initially. If any new value is negative, the operation leaves all words unchanged,
+         * and {@link #invoke(Op)} throws {@link IllegalArgumentException}.
+         *
+         * <p>This method can be called by several threads concurrently with the same values,
+         * so it must be deterministic. The results that are stored in the descriptor must be published safely,
+         * as immutable objects or elements of atomic arrays, since the thread that invoked the operation
+         * may read the ones written by a helper when {@link #invoke(Op)} returns.
+         */
+        protected abstract void compute(long[] values, long[] newValues);
+    }
+
+    /**
+     * Acquisition of a word by an operation, the word holds the tag with the stamp while it is acquired.
+     */
+    private static class Acquisition {
+        final long stamp;
+        final Op op;
+        final int pos;
+
+        /**
+         * Value of the word before acquisition.
+         */
+        final long value;
+
+        Acquisition(long stamp, Op op, int pos, long value) {
+            this.stamp = stamp;
+            this.op = op;
+            this.pos = pos;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Immutable list of acquisitions in the slot of a word, it is replaced as a whole.
+     */
+    private static class Entry {
+        final Acquisition acquisition;
+        final Entry next;
+
+        Entry(Acquisition acquisition, Entry next) {
+            this.acquisition = acquisition;
+            this.next = next;
+        }
+    }
+
+    private final AtomicLongArray words;
+    private final AtomicLongArray stamps;
+    final AtomicReferenceArray<Entry> slots; // package-private, so tests check that all acquisitions are removed
+
+    /**
+     * Creates new array of words with zero values.
+     *
+     * @param n the number of words.
+     */
+    public LongMultiWordCas(int n) {
+        words = new AtomicLongArray(n);
+        stamps = new AtomicLongArray(n);
+        slots = new AtomicReferenceArray<Entry>(n);
+    }
+
+    /**
+     * Returns the number of words.
+     */
+    public int length() {
+        return words.length();
+    }
+
+    /**
+     * Returns the current value of the word, helping to complete the operation that acquired it first.
+     *
+     * @throws IndexOutOfBoundsException when index is invalid.
+     */
+    public long get(int index) {
+        while (true) {
+            long word = words.get(index);
+            if (word >= 0) {
+                return word;
+            }
+            help(index, word, null);
+        }
+    }
+
+    /**
+     * Atomically replaces the value of a single word if it is the expected one, which is obtained by {@link #get(int)}.
+     * It fails when the word is acquired by an operation, then the value must be read again.
+     *
+     * @throws IllegalArgumentException when expect or update is negative.
+     */
+    public boolean compareAndSet(int index, long expect, long update) {
+        if (expect < 0) {
+            throw new IllegalArgumentException("Invalid expected value: " + expect);
+        }
+        if (update < 0) {
+            throw new IllegalArgumentException("Invalid value: " + update);
+        }
+        return words.compareAndSet(index, expect, update);
+    }
+
+    /**
+     * Performs the operation atomically: all its words are acquired, then new values are computed and set.
+     * This method can be called by any thread that helps the operation, and returns when it has completed.
+     *
+     * @throws IndexOutOfBoundsException when some index of the operation is invalid.
+     * @throws IllegalArgumentException  when the operation computes a negative value, then words are unchanged.
+     */
+    public void invoke(Op op) {
+        complete(op);
+        if (op.rejected) {
+            throw new IllegalArgumentException("Operation computed a negative value for one of words: " +
+                    Arrays.toString(op.indices));
+        }
+    }
+
+    /**
+     * Completes the operation like {@link #invoke(Op)}, but does not throw when it is rejected,
+     * since the thread that helps the operation is not the one that invoked it.
+     */
+    private void complete(Op op) {
+        int[] indices = op.indices;
+        int n = indices.length;
+        if (n > 0 && (indices[0] < 0 || indices[n - 1] >= words.length())) {
+            throw new IndexOutOfBoundsException("Indices: " + Arrays.toString(indices));
+        }
+        if (!op.completed) {
+            long[] values = new long[n];
+            int i = 0;
+            for (; i < n; i++) {
+                Acquisition acquisition = acquire(op, i);
+                if (acquisition == null) {
+                    break;
+                }
+                values[i] = acquisition.value;
+            }
+            if (i == n) {
+                long[] newValues = values.clone();
+                op.compute(values, newValues);
+                for (long newValue : newValues) {
+                    if (newValue < 0) {
+                        // a negative value would look like a tag, so the operation completes with the old values
+                        op.rejected = true;
+                        newValues = values;
+                        break;
+                    }
+                }
+                for (int pos = 0; pos < n; pos++) {
+                    op.newValues.set(pos, newValues[pos]);
+                }
+                op.completed = true; // volatile write to completed field _after_ the results were written
+            }
+        }
+        // all words are acquired when operation has completed, and other threads may have acquired more than this one
+        for (int i = 0; i < n; i++) {
+            release(op, i);
+        }
+    }
+
+    /**
+     * Returns the acquisition of the word at pos by op, acquiring it if needed,
+     * or null if op.completed is true.
+     */
+    private Acquisition acquire(Op op, int pos) {
+        int index = op.indices[pos];
+        while (true) {
+            Acquisition acquisition = op.acquired.get(pos);
+            if (acquisition != null) {
+                return acquisition;
+            }
+            if (op.completed) {
+                return null;
+            }
+            long word = words.get(index);
+            if (word < 0) {
+                help(index, word, op);
+                continue;
+            }
+            acquisition = new Acquisition(stamps.incrementAndGet(index), op, pos, word);
+            register(index, acquisition);
+            if (words.compareAndSet(index, word, TAG | acquisition.stamp)) {
+                resolve(index, acquisition);
+            } else {
+                unregister(index, acquisition);
+            }
+        }
+    }
+
+    /**
+     * Makes the acquisition the one of its operation if the operation has not acquired the word yet,
+     * otherwise restores the value of the word. Returns true in the first case.
+     */
+    private boolean resolve(int index, Acquisition acquisition) {
+        Op op = acquisition.op;
+        if (op.acquired.compareAndSet(acquisition.pos, null, acquisition) ||
+                op.acquired.get(acquisition.pos) == acquisition) {
+            return true;
+        }
+        if (words.compareAndSet(index, TAG | acquisition.stamp, acquisition.value)) {
+            unregister(index, acquisition);
+        }
+        return false;
+    }
+
+    /**
+     * Helps to resolve the tag that was read from the word at index. If the word is acquired by an operation
+     * other than current, then the operation is completed, which releases the word.
+     */
+    private void help(int index, long word, Op current) {
+        Acquisition acquisition = find(index, word & ~TAG);
+        if (acquisition == null) {
+            return; // the word has changed already
+        }
+        if (resolve(index, acquisition) && acquisition.op != current) {
+            complete(acquisition.op);
+        }
+    }
+
+    /**
+     * Releases the word at pos that was acquired by op, setting its new value.
+     * This method does nothing if the word is released already.
+     */
+    private void release(Op op, int pos) {
+        assert op.completed; // must be called only on operations that were already completed
+        Acquisition acquisition = op.acquired.get(pos);
+        // release performs update at most once, since the tag with the stamp is put into the word only once
+        if (words.compareAndSet(op.indices[pos], TAG | acquisition.stamp, op.newValues.get(pos))) {
+            unregister(op.indices[pos], acquisition);
+        }
+    }
+
+    /**
+     * Adds the acquisition to the slot of the word at index before its tag is put into the word.
+     */
+    private void register(int index, Acquisition acquisition) {
+        while (true) {
+            Entry entry = slots.get(index);
+            if (slots.compareAndSet(index, entry, new Entry(acquisition, entry))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes the acquisition from the slot of the word at index after its tag is removed from the word,
+     * or was not put into it.
+     */
+    private void unregister(int index, Acquisition acquisition) {
+        while (true) {
+            Entry entry = slots.get(index);
+            if (slots.compareAndSet(index, entry, without(entry, acquisition))) {
+                return;
+            }
+        }
+    }
+
+    private static Entry without(Entry entry, Acquisition acquisition) {
+        if (entry == null) {
+            return null;
+        }
+        if (entry.acquisition == acquisition) {
+            return entry.next;
+        }
+        Entry next = without(entry.next, acquisition);
+        return (next == entry.next) ? entry : new Entry(entry.acquisition, next);
+    }
+
+    /**
+     * Returns the acquisition of the word at index with the stamp, or null if it is not in the slot anymore.
+     */
+    private Acquisition find(int index, long stamp) {
+        for (Entry entry = slots.get(index); entry != null; entry = entry.next) {
+            if (entry.acquisition.stamp == stamp) {
+                return entry.acquisition;
+            }
+        }
+        return null;
+    }
+}
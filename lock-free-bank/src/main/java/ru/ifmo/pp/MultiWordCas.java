@@ -0,0 +1,231 @@
+package ru.ifmo.pp;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Array of words that supports atomic updates of multiple words.
+ * This class is thread-safe and lock-free using operation descriptors.
+ *
+ * <p>This implementation is based on "A Practical Multi-Word Compare-and-Swap Operation" by T. L. Harris et al.
+ * Words hold immutable {@link Cell} instances, and an operation acquires its words in the ascending order
+ * of indices by replacing them with internal {@link Acquired} markers that hold a reference to the operation
+ * descriptor, computes new values, and releases the words. Any thread that meets an acquired word helps
+ * to complete the operation first. It uses a simplified and faster version of DCSS operation
+ * that relies for its correctness on the fact that cell instances are never put into the array twice.
+ * See also "Practical lock-freedom" by Keir Fraser.
+ * See {@link #acquire(int, Op)} method.
+ */
+public class MultiWordCas {
+    /**
+     * Immutable value of a word, subclasses keep their data in final fields.
+     * A cell instance is put into the array at most once (there is no ABA).
+     */
+    public abstract static class Cell {
+        /**
+         * Returns new cell with the same value, which replaces this one when an operation leaves the word unchanged.
+         */
+        protected abstract Cell copy();
+    }
+
+    /**
+     * Operation that acts on multiple words. The descriptor is shared by all threads that help to complete it,
+     * so it is used for one invocation only.
+     */
+    public abstract static class Op {
+        /**
+         * Indices of words in the ascending order.
+         */
+        final int[] indices;
+
+        /**
+         * True when operation has completed.
+         */
+        volatile boolean completed;
+
+        /**
+         * @param indices distinct indices of words in the ascending order.
+         * @throws IllegalArgumentException when indices are not in the ascending order.
+         */
+        protected Op(int[] indices) {
+            for (int i = 1; i < indices.length; i++) {
+                if (indices[i - 1] >= indices[i]) {
+                    throw new IllegalArgumentException("Indices are not in the ascending order: " +
+                            Arrays.toString(indices));
+                }
+            }
+            this.indices = indices;
+        }
+
+        /**
+         * Computes the result of operation from the values of its words, both in the order of indices.
+         * New values are stored into newValues, which is filled with nulls for unchanged words,
+         * every new value must be a new cell instance.
+         *
+         * <p>This method can be called by several threads concurrently with the same values,
+         * so it must be deterministic, and the results stored in fields of the descriptor have a benign data race.
+         * They are visible to the thread that invoked the operation when {@link #invoke(Op)} returns.
+         */
+        protected abstract void compute(Cell[] values, Cell[] newValues);
+    }
+
+    /**
+     * Marker of a word that was acquired as a part of in-progress operation. It is not a {@link Cell},
+     * so it is never returned to users, and words keep either cells or markers.
+     *
+     * @see #acquire(int, Op)
+     */
+    private static class Acquired {
+        final Cell value;
+        final Op op;
+
+        /**
+         * New value of this word when op completes, or null if it is unchanged.
+         */
+        Cell newValue;
+
+        Acquired(Cell value, Op op) {
+            this.value = value;
+            this.op = op;
+        }
+    }
+
+    private final AtomicReferenceArray<Object> words; // cells and acquired markers
+
+    /**
+     * Creates new array of words.
+     *
+     * @param values initial values of words.
+     */
+    public MultiWordCas(Cell[] values) {
+        words = new AtomicReferenceArray<Object>(values);
+    }
+
+    /**
+     * Returns the number of words.
+     */
+    public int length() {
+        return words.length();
+    }
+
+    /**
+     * Returns the current value of the word, helping to complete the operation that acquired it first.
+     *
+     * @throws IndexOutOfBoundsException when index is invalid.
+     */
+    public Cell get(int index) {
+        while (true) {
+            Object cell = words.get(index);
+            if (cell instanceof Acquired) {
+                invoke(((Acquired) cell).op);
+            } else {
+                return (Cell) cell;
+            }
+        }
+    }
+
+    /**
+     * Atomically replaces the value of a single word if it is the expected one,
+     * which is obtained by {@link #get(int)}. The update must be a new cell instance.
+     * It fails when the word is acquired by an operation, then the value must be read again.
+     */
+    public boolean compareAndSet(int index, Cell expect, Cell update) {
+        return words.compareAndSet(index, expect, update);
+    }
+
+    /**
+     * Performs the operation atomically: all its words are acquired, then new values are computed and set.
+     * This method can be called by any thread that helps the operation, and returns when it has completed.
+     *
+     * @throws IndexOutOfBoundsException when some index of the operation is invalid.
+     */
+    public void invoke(Op op) {
+        int[] indices = op.indices;
+        int n = indices.length;
+        if (n > 0 && (indices[0] < 0 || indices[n - 1] >= words.length())) {
+            throw new IndexOutOfBoundsException("Indices: " + Arrays.toString(indices));
+        }
+        Acquired[] acquired = new Acquired[n];
+        int i = 0;
+        for (; i < n; i++) {
+            Acquired cell = acquire(indices[i], op);
+            if (cell == null) {
+                break;
+            }
+            acquired[i] = cell;
+        }
+        if (i == n) {
+            /*
+             * If i == n, then all words are acquired by this op, so their values cannot change until it completes.
+             * Concurrent helpers compute the same new values, and assignments to newValue race benignly.
+             */
+            Cell[] values = new Cell[n];
+            for (int j = 0; j < n; j++) {
+                values[j] = acquired[j].value;
+            }
+            Cell[] newValues = new Cell[n];
+            op.compute(values, newValues);
+            for (int j = 0; j < n; j++) {
+                acquired[j].newValue = newValues[j];
+            }
+            op.completed = true; // volatile write to completed field _after_ the results were written
+        }
+        /*
+         * As performance optimization, only acquired words are released. There is no harm in calling
+         * release for all words, though.
+         */
+        for (; --i >= 0; ) {
+            release(indices[i], op);
+        }
+    }
+
+    /**
+     * This is an implementation of a restricted form of Harris DCSS operation:
+     * It atomically checks that op.completed is false and replaces words[index] with Acquired instance
+     * that hold a reference to the op.
+     * This method returns null if op.completed is true.
+     */
+    private Acquired acquire(int index, Op op) {
+        while (true) {
+            if (op.completed) {
+                return null;
+            }
+            Object cell = words.get(index);
+            if (cell instanceof Acquired) {
+                Acquired acquired = (Acquired) cell;
+                if (op == acquired.op) {
+                    return acquired;
+                } else {
+                    invoke(acquired.op);
+                }
+            } else {
+                if (op.completed) {
+                    return null;
+                }
+                Acquired acquired = new Acquired((Cell) cell, op);
+                if (words.compareAndSet(index, cell, acquired)) {
+                    return acquired;
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases a word that was previously acquired by {@link #acquire(int, Op)}.
+     * This method does nothing if the word at index is not currently acquired by op.
+     */
+    private void release(int index, Op op) {
+        assert op.completed; // must be called only on operations that were already completed
+        Object cell = words.get(index);
+        if (cell instanceof Acquired) {
+            Acquired acquired = (Acquired) cell;
+            if (acquired.op == op) {
+                // release performs update at most once while the word is still acquired,
+                // and puts a new cell instance even if the value is unchanged
+                Cell newValue = acquired.newValue;
+                Cell updated = (newValue != null) ? newValue : acquired.value.copy();
+                words.compareAndSet(index, cell, updated);
+            }
+        }
+    }
+}
@@ -66,4 +66,49 @@ public class FunctionalTest extends TestCase {
         assertEquals(transferAmount, bank.getAmount(2));
         assertEquals(depositAmount, bank.getTotalAmount());
     }
+
+    public void testTransferBatch() {
+        bank.deposit(1, 1000);
+        // the second leg is funded by the first one
+        bank.transferBatch(new int[]{1, 2, 1}, new int[]{2, 3, 4}, new long[]{700, 500, 300});
+        assertEquals(0, bank.getAmount(1));
+        assertEquals(200, bank.getAmount(2));
+        assertEquals(500, bank.getAmount(3));
+        assertEquals(300, bank.getAmount(4));
+        assertEquals(1000, bank.getTotalAmount());
+    }
+
+    public void testTransferBatchFailsAsWhole() {
+        bank.deposit(1, 1000);
+        try {
+            bank.transferBatch(new int[]{1, 2}, new int[]{2, 3}, new long[]{700, 800});
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException expected) {
+            assertEquals("Underflow", expected.getMessage());
+        }
+        assertEquals(1000, bank.getAmount(1));
+        assertEquals(0, bank.getAmount(2));
+        assertEquals(0, bank.getAmount(3));
+        try {
+            bank.transferBatch(new int[]{1, 2}, new int[]{2, 2}, new long[]{100, 100});
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(1000, bank.getAmount(1));
+    }
+
+    public void testSnapshot() {
+        bank.deposit(1, 1000);
+        bank.deposit(3, 2000);
+        bank.transfer(3, 4, 500);
+        long[] amounts = new long[N];
+        bank.snapshot(amounts);
+        for (int i = 0; i < N; i++)
+            assertEquals(bank.getAmount(i), amounts[i]);
+        try {
+            bank.snapshot(new long[N - 1]);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
 }
@@ -0,0 +1,144 @@
+package ru.ifmo.pp;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Multi-threaded test-suite for multi-word CAS on long words. Operations that rotate values of overlapping words
+ * race with single-word reads and updates, so threads often meet acquired words, help operations to complete,
+ * and resolve stale acquisitions.
+ */
+public class LongMultiWordCasTest extends TestCase {
+    private static final int N = 8;
+    private static final int ROTATORS = 4;
+    private static final int READERS = 4;
+    private static final int OPS = 100_000;
+
+    private final LongMultiWordCas words = new LongMultiWordCas(N);
+
+    @Override
+    protected void setUp() {
+        for (int i = 0; i < N; i++) {
+            assertTrue(words.compareAndSet(i, 0, i));
+        }
+    }
+
+    public void testConcurrentRotations() throws InterruptedException {
+        Thread[] threads = new Thread[ROTATORS + READERS];
+        Throwable[] errors = new Throwable[threads.length];
+        for (int t = 0; t < threads.length; t++) {
+            int threadNo = t;
+            Runnable task = (t < ROTATORS) ? this::rotate : this::readAndUpdate;
+            threads[t] = new Thread(() -> {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    errors[threadNo] = e;
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (Throwable error : errors) {
+            if (error != null) {
+                throw new AssertionError(error);
+            }
+        }
+        // rotations and updates to the same value preserve the multiset of values
+        long[] values = new long[N];
+        for (int i = 0; i < N; i++) {
+            values[i] = words.get(i);
+        }
+        Arrays.sort(values);
+        for (int i = 0; i < N; i++) {
+            assertEquals(i, values[i]);
+        }
+        // all acquisitions are removed from the slots when the words are released
+        for (int i = 0; i < N; i++) {
+            assertNull(words.slots.get(i));
+        }
+    }
+
+    public void testNegativeValue() {
+        try {
+            words.compareAndSet(1, -1, 1);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            words.compareAndSet(1, 1, -1);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            words.invoke(new NegateOp(new int[]{1, 2}));
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+        }
+        // the rejected operation leaves words unchanged and released
+        assertEquals(1, words.get(1));
+        assertEquals(2, words.get(2));
+        assertTrue(words.compareAndSet(1, 1, 10));
+        assertNull(words.slots.get(1));
+    }
+
+    private void rotate() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int k = 0; k < OPS; k++) {
+            int from = random.nextInt(N - 1);
+            int to = from + 1 + random.nextInt(N - 1 - from);
+            int[] indices = new int[to - from + 1];
+            for (int i = 0; i < indices.length; i++) {
+                indices[i] = from + i;
+            }
+            words.invoke(new RotateOp(indices));
+        }
+    }
+
+    private void readAndUpdate() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int k = 0; k < OPS; k++) {
+            int index = random.nextInt(N);
+            long value = words.get(index);
+            assertTrue(value >= 0 && value < N);
+            words.compareAndSet(index, value, value); // fails when the word is acquired or changed
+        }
+    }
+
+    /**
+     * Moves the value of every word to the next one, and the value of the last word to the first one.
+     */
+    private static class RotateOp extends LongMultiWordCas.Op {
+        RotateOp(int[] indices) {
+            super(indices);
+        }
+
+        @Override
+        protected void compute(long[] values, long[] newValues) {
+            int n = values.length;
+            for (int i = 0; i < n; i++) {
+                newValues[(i + 1) % n] = values[i];
+            }
+        }
+    }
+
+    /**
+     * Computes negative values, which are rejected.
+     */
+    private static class NegateOp extends LongMultiWordCas.Op {
+        NegateOp(int[] indices) {
+            super(indices);
+        }
+
+        @Override
+        protected void compute(long[] values, long[] newValues) {
+            for (int i = 0; i < values.length; i++) {
+                newValues[i] = -values[i] - 1;
+            }
+        }
+    }
+}
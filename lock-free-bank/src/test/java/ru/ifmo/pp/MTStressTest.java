@@ -10,7 +10,7 @@ import java.util.concurrent.atomic.AtomicLong;
 /**
  * Multi-threaded stress test for bank implementation -- many threads and operations of various accounts.
  *
- * <p>This test test correctness of concurrent deposit, withdraw, transfer, and getTotalAmount operations.
+ * <p>This test test correctness of concurrent deposit, withdraw, transfer, getTotalAmount, and snapshot operations.
  * It does not check getAmount operations concurrently with the above.
  *
  * @author Roman Elizarov
@@ -70,6 +70,7 @@ public class MTStressTest extends TestCase {
     private class TestThread extends Thread {
         private final int threadNo;
         private ThreadLocalRandom rnd;
+        private final long[] amounts = new long[N];
 
         public TestThread(int threadNo) {
             super("TestThread-" + threadNo);
@@ -122,6 +123,20 @@ public class MTStressTest extends TestCase {
                 assertEquals(0, totalAmount % MOD); // the result must be divisible to MOD
                 return;
             }
+            if (op == 2) {
+                // every 100th operation on average is snapshot, which retries while accounts are updated concurrently
+                bank.snapshot(amounts);
+                long totalAmount = 0;
+                for (long amount : amounts)
+                    totalAmount += amount;
+                assertEquals(0, totalAmount % MOD); // the snapshot must see every transfer as a whole
+                return;
+            }
+            if (op == 1) {
+                // every 100th operation on average is transferBatch
+                runTransferBatch();
+                return;
+            }
             int i = rnd.nextInt(N);
             long amount;
             switch (op & 3) {
@@ -152,6 +167,25 @@ public class MTStressTest extends TestCase {
             }
         }
 
+        private void runTransferBatch() {
+            int legs = 3 + rnd.nextInt(18);
+            int[] fromIndices = new int[legs];
+            int[] toIndices = new int[legs];
+            long[] amounts = new long[legs];
+            for (int k = 0; k < legs; k++) {
+                fromIndices[k] = rnd.nextInt(N);
+                toIndices[k] = rnd.nextInt(N - 1);
+                if (toIndices[k] >= fromIndices[k])
+                    toIndices[k]++;
+                amounts[k] = nextAmount();
+            }
+            bank.transferBatch(fromIndices, toIndices, amounts);
+            for (int k = 0; k < legs; k++) {
+                expected[fromIndices[k]].addAndGet(-amounts[k]);
+                expected[toIndices[k]].addAndGet(amounts[k]);
+            }
+        }
+
         private long nextRoundAmount() {
             return ((long) nextAmount() + MOD - 1) / MOD * MOD;
         }
@@ -0,0 +1,107 @@
+package ru.ifmo.pp;
+
+import junit.framework.TestCase;
+
+/**
+ * Functional single-threaded test-suite for multi-word CAS.
+ */
+public class MultiWordCasTest extends TestCase {
+    private static final int N = 5;
+
+    private final MultiWordCas words = new MultiWordCas(cells(N));
+
+    public void testGetAndCompareAndSet() {
+        assertEquals(N, words.length());
+        IntCell cell = (IntCell) words.get(1);
+        assertEquals(1, cell.value);
+        assertTrue(words.compareAndSet(1, cell, new IntCell(10)));
+        assertFalse(words.compareAndSet(1, cell, new IntCell(20)));
+        assertEquals(10, ((IntCell) words.get(1)).value);
+    }
+
+    public void testInvoke() {
+        RotateOp op = new RotateOp(new int[]{0, 2, 4});
+        words.invoke(op);
+        assertEquals(0 + 2 + 4, op.sum);
+        assertEquals(4, ((IntCell) words.get(0)).value);
+        assertEquals(1, ((IntCell) words.get(1)).value);
+        assertEquals(0, ((IntCell) words.get(2)).value);
+        assertEquals(3, ((IntCell) words.get(3)).value);
+        assertEquals(2, ((IntCell) words.get(4)).value);
+    }
+
+    public void testUnchangedWordIsReplaced() {
+        IntCell cell = (IntCell) words.get(3);
+        words.invoke(new RotateOp(new int[]{3}));
+        assertEquals(3, ((IntCell) words.get(3)).value);
+        // the cell is copied, so a stale compareAndSet fails
+        assertFalse(words.compareAndSet(3, cell, new IntCell(30)));
+    }
+
+    public void testUnsortedIndices() {
+        try {
+            new RotateOp(new int[]{2, 1});
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            new RotateOp(new int[]{1, 1});
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testInvalidIndex() {
+        try {
+            words.invoke(new RotateOp(new int[]{0, N}));
+            fail("IndexOutOfBoundsException expected");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+        assertEquals(0, ((IntCell) words.get(0)).value);
+    }
+
+    private static MultiWordCas.Cell[] cells(int n) {
+        MultiWordCas.Cell[] cells = new MultiWordCas.Cell[n];
+        for (int i = 0; i < n; i++) {
+            cells[i] = new IntCell(i);
+        }
+        return cells;
+    }
+
+    private static class IntCell extends MultiWordCas.Cell {
+        final int value;
+
+        IntCell(int value) {
+            this.value = value;
+        }
+
+        @Override
+        protected IntCell copy() {
+            return new IntCell(value);
+        }
+    }
+
+    /**
+     * Moves the value of every word to the next one, and the value of the last word to the first one.
+     */
+    private static class RotateOp extends MultiWordCas.Op {
+        long sum;
+
+        RotateOp(int[] indices) {
+            super(indices);
+        }
+
+        @Override
+        protected void compute(MultiWordCas.Cell[] values, MultiWordCas.Cell[] newValues) {
+            int n = values.length;
+            long sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += ((IntCell) values[i]).value;
+                if (n > 1) {
+                    newValues[(i + 1) % n] = new IntCell(((IntCell) values[i]).value);
+                }
+            }
+            this.sum = sum;
+        }
+    }
+}
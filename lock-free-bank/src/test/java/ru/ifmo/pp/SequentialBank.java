@@ -53,6 +53,18 @@ class SequentialBank implements Bank {
         return sum;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void snapshot(long[] out) {
+        if (out.length < accounts.length)
+            throw new IllegalArgumentException("Array is shorter than the number of accounts: " + out.length);
+        for (int i = 0; i < accounts.length; i++) {
+            out[i] = accounts[i].amount;
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -100,6 +112,28 @@ class SequentialBank implements Bank {
         to.amount += amount;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void transferBatch(int[] fromIndices, int[] toIndices, long[] amounts) {
+        if (fromIndices.length != toIndices.length || fromIndices.length != amounts.length)
+            throw new IllegalArgumentException("Different lengths of fromIndices, toIndices and amounts");
+        int i = 0;
+        try {
+            for (; i < amounts.length; i++) {
+                transfer(fromIndices[i], toIndices[i], amounts[i]);
+            }
+        } catch (RuntimeException e) {
+            // roll back the performed transfers
+            while (--i >= 0) {
+                accounts[fromIndices[i]].amount += amounts[i];
+                accounts[toIndices[i]].amount -= amounts[i];
+            }
+            throw e;
+        }
+    }
+
     /**
      * Private account data structure.
      */